@@ -0,0 +1,170 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import net.sf.ehcache.CacheManager;
+import org.jahia.services.cache.ehcache.EhCacheProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jcr.RepositoryException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provider level {@link ExternalDataCache}, filled with the tree of an in-memory data source: cache hits by path,
+ * identifier and children, which all copy the cached values, storing items, and the invalidation of a subtree followed
+ * by its reload, as done after a save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DataCacheBenchmark {
+
+    private static final int DEPTH = 3;
+
+    private static final int FAN_OUT = 10;
+
+    private CacheManager cacheManager;
+
+    private ExternalDataCache cache;
+
+    private InMemoryDataSource dataSource;
+
+    private List<ExternalData> items;
+
+    private List<String> folders;
+
+    private int index;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        cacheManager = CacheManager.create();
+        final CacheManager manager = cacheManager;
+        cache = new ExternalDataCache(new EhCacheProvider() {
+            @Override
+            public CacheManager getCacheManager() {
+                return manager;
+            }
+        }, "benchmark", 100000, 3600);
+
+        dataSource = new InMemoryDataSource(DEPTH, FAN_OUT);
+        items = new ArrayList<ExternalData>();
+        folders = new ArrayList<String>();
+        collect("/");
+        for (ExternalData data : items) {
+            cache.putItem(data, cache.getStamp());
+        }
+        for (String folder : folders) {
+            cache.putChildren(folder, dataSource.getChildren(folder), cache.getStamp());
+        }
+    }
+
+    private void collect(String path) throws RepositoryException {
+        items.add(dataSource.getItemByPath(path));
+        List<String> children = dataSource.getChildren(path);
+        if (!children.isEmpty()) {
+            folders.add(path);
+            for (String name : children) {
+                collect(path.equals("/") ? "/" + name : path + "/" + name);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.dispose();
+        cacheManager.shutdown();
+    }
+
+    private ExternalData nextItem() {
+        index = (index + 1) % items.size();
+        return items.get(index);
+    }
+
+    @Benchmark
+    public ExternalData getItemByPath() {
+        return cache.getItemByPath(nextItem().getPath());
+    }
+
+    @Benchmark
+    public ExternalData getItemByIdentifier() {
+        return cache.getItemByIdentifier(nextItem().getId());
+    }
+
+    @Benchmark
+    public List<String> getChildren() {
+        index = (index + 1) % folders.size();
+        return cache.getChildren(folders.get(index));
+    }
+
+    @Benchmark
+    public void putItem() {
+        cache.putItem(nextItem(), cache.getStamp());
+    }
+
+    @Benchmark
+    public void invalidateTreeAndReload() throws RepositoryException {
+        // one of the first level folders, with its 110 descendants
+        index = (index + 1) % FAN_OUT;
+        String root = "/folder" + index;
+        cache.invalidateTree(root);
+        long stamp = cache.getStamp();
+        reload(root, stamp);
+        cache.putChildren("/", dataSource.getChildren("/"), stamp);
+    }
+
+    private void reload(String path, long stamp) throws RepositoryException {
+        cache.putItem(dataSource.getItemByPath(path), stamp);
+        List<String> children = dataSource.getChildren(path);
+        if (!children.isEmpty()) {
+            cache.putChildren(path, children, stamp);
+            for (String name : children) {
+                reload(path + "/" + name, stamp);
+            }
+        }
+    }
+}
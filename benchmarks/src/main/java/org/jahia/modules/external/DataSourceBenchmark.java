@@ -0,0 +1,157 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import org.jahia.modules.external.monitoring.DataSourceMetrics;
+import org.jahia.modules.external.test.db.GenericDatabaseDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read access patterns of the sessions, replayed directly on the data sources: single item lookups as done by
+ * <code>ExternalSessionImpl.getNode()</code>, deep traversals as done by <code>getNodes()</code> iterations, and
+ * batch loads as done by the prefetcher. Each one is measured with and without the metrics instrumentation, to keep
+ * its overhead in check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DataSourceBenchmark {
+
+    private static final int MAX_SAMPLE_SIZE = 1000;
+
+    /**
+     * <code>memory</code> for the {@link InMemoryDataSource}, <code>derby</code> for the embedded toursdb database
+     */
+    @Param({"memory", "derby"})
+    public String source;
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private ExternalDataSource rawDataSource;
+
+    private ExternalDataSource dataSource;
+
+    private List<String> paths;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        if ("derby".equals(source)) {
+            // the generic data source does not depend on the node type registry, unlike the mapped one
+            GenericDatabaseDataSource databaseDataSource = new GenericDatabaseDataSource();
+            databaseDataSource.start();
+            rawDataSource = databaseDataSource;
+        } else {
+            rawDataSource = new InMemoryDataSource(3, 10);
+        }
+        if (instrumented) {
+            ExternalContentStoreProvider provider = new ExternalContentStoreProvider();
+            provider.setKey("benchmark");
+            dataSource = new DataSourceMetrics(provider).instrument(rawDataSource);
+        } else {
+            dataSource = rawDataSource;
+        }
+        paths = new ArrayList<String>();
+        collectPaths("/", paths);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (rawDataSource instanceof ExternalDataSource.Initializable) {
+            ((ExternalDataSource.Initializable) rawDataSource).stop();
+        }
+    }
+
+    private void collectPaths(String path, List<String> result) throws RepositoryException {
+        for (String name : rawDataSource.getChildren(path)) {
+            if (result.size() >= MAX_SAMPLE_SIZE) {
+                return;
+            }
+            String childPath = path.endsWith("/") ? path + name : path + "/" + name;
+            result.add(childPath);
+            collectPaths(childPath, result);
+        }
+    }
+
+    @Benchmark
+    public void getItemByPath(Blackhole blackhole) throws RepositoryException {
+        for (String path : paths) {
+            blackhole.consume(dataSource.getItemByPath(path));
+        }
+    }
+
+    @Benchmark
+    public void deepTraversal(Blackhole blackhole) throws RepositoryException {
+        traverse("/", blackhole, new int[]{0});
+    }
+
+    private void traverse(String path, Blackhole blackhole, int[] count) throws RepositoryException {
+        for (String name : dataSource.getChildren(path)) {
+            if (count[0]++ >= MAX_SAMPLE_SIZE) {
+                return;
+            }
+            String childPath = path.endsWith("/") ? path + name : path + "/" + name;
+            blackhole.consume(dataSource.getItemByPath(childPath));
+            traverse(childPath, blackhole, count);
+        }
+    }
+
+    @Benchmark
+    public void batchLoad(Blackhole blackhole) throws RepositoryException {
+        if (dataSource instanceof ExternalDataSource.CanLoadItemsInBatch) {
+            blackhole.consume(((ExternalDataSource.CanLoadItemsInBatch) dataSource).getItemsByPath(paths));
+        } else {
+            getItemByPath(blackhole);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import net.sf.ehcache.CacheManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.jahia.modules.external.id.ExternalProviderID;
+import org.jahia.modules.external.id.ExternalProviderInitializerServiceImpl;
+import org.jahia.modules.external.id.UuidMapping;
+import org.jahia.services.cache.ehcache.EhCacheProvider;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jcr.RepositoryException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifier mapping of {@link ExternalProviderInitializerServiceImpl}, against the <code>jahia_external_mapping</code>
+ * table created in an in-memory Derby database: lookups with a warm and a cold identifier cache, creation of new
+ * mappings, and bulk update of the external identifiers as done after saving new items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IdentifierMappingBenchmark {
+
+    private static final String PROVIDER_KEY = "benchmark";
+
+    private static final String PROVIDER_ID = "ffffffff";
+
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private SessionFactory sessionFactory;
+
+    private CacheManager cacheManager;
+
+    private ExternalProviderInitializerServiceImpl service;
+
+    private List<String> externalIds;
+
+    private Map<String, String> renames;
+
+    private Map<String, String> reverseRenames;
+
+    private boolean renamed;
+
+    private final AtomicLong newIds = new AtomicLong();
+
+    /**
+     * Clears the identifier cache before each call, so that the mappings are read from the database.
+     */
+    @State(Scope.Benchmark)
+    public static class ColdCache {
+
+        @Setup(Level.Invocation)
+        public void clear(IdentifierMappingBenchmark benchmark) {
+            benchmark.service.getIdentifierCache().removeAll();
+        }
+    }
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(UuidMapping.class)
+                .addAnnotatedClass(ExternalProviderID.class)
+                .setProperty("hibernate.connection.driver_class", "org.apache.derby.jdbc.EmbeddedDriver")
+                .setProperty("hibernate.connection.url", "jdbc:derby:memory:external-provider-benchmark;create=true")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.DerbyTenSevenDialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.jdbc.batch_size", "50")
+                .buildSessionFactory();
+        cacheManager = CacheManager.create();
+        final CacheManager manager = cacheManager;
+
+        service = new ExternalProviderInitializerServiceImpl();
+        service.setHibernateSessionFactory(sessionFactory);
+        service.setCacheProvider(new EhCacheProvider() {
+            @Override
+            public CacheManager getCacheManager() {
+                return manager;
+            }
+        });
+
+        externalIds = new ArrayList<String>(batchSize);
+        renames = new LinkedHashMap<String, String>();
+        reverseRenames = new LinkedHashMap<String, String>();
+        for (int i = 0; i < batchSize; i++) {
+            String externalId = "/folder" + (i / 100) + "/item" + i;
+            externalIds.add(externalId);
+            renames.put(externalId, externalId + "-renamed");
+            reverseRenames.put(externalId + "-renamed", externalId);
+        }
+        service.getOrCreateInternalIdentifiers(externalIds, PROVIDER_KEY, PROVIDER_ID);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+        cacheManager.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, String> getInternalIdentifiersCached() throws RepositoryException {
+        return service.getInternalIdentifiers(externalIds, PROVIDER_KEY);
+    }
+
+    @Benchmark
+    public Map<String, String> getInternalIdentifiersFromDatabase(ColdCache coldCache) throws RepositoryException {
+        return service.getInternalIdentifiers(externalIds, PROVIDER_KEY);
+    }
+
+    @Benchmark
+    public Map<String, String> createInternalIdentifiers() throws RepositoryException {
+        List<String> ids = new ArrayList<String>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ids.add("/new/item" + newIds.incrementAndGet());
+        }
+        return service.getOrCreateInternalIdentifiers(ids, PROVIDER_KEY, PROVIDER_ID);
+    }
+
+    @Benchmark
+    public void updateExternalIdentifiers() throws RepositoryException {
+        // renames back and forth, keeping the table size constant
+        service.updateExternalIdentifiers(renamed ? reverseRenames : renames, PROVIDER_KEY);
+        renamed = !renamed;
+    }
+}
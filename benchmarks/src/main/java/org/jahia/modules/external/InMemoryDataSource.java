@@ -0,0 +1,206 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Data source keeping a generated tree of items in memory, used to measure the overhead of the provider itself,
+ * independently of any backend latency.
+ */
+public class InMemoryDataSource implements ExternalDataSource, ExternalDataSource.CanLoadItemsInBatch,
+        ExternalDataSource.CanLoadChildrenInBatch, ExternalDataSource.CanSaveItemsInBatch {
+
+    static final String FOLDER_TYPE = "jnt:contentList";
+
+    static final String ITEM_TYPE = "jnt:text";
+
+    private final Map<String, ExternalData> items = new ConcurrentHashMap<String, ExternalData>();
+
+    private final Map<String, List<String>> children = new ConcurrentHashMap<String, List<String>>();
+
+    /**
+     * Creates a tree of <code>fanOut</code> children per folder on <code>depth</code> levels. Items of the last level
+     * are leaves.
+     *
+     * @param depth  number of levels below the root
+     * @param fanOut number of children per folder
+     */
+    public InMemoryDataSource(int depth, int fanOut) {
+        items.put("/", createData("/", FOLDER_TYPE));
+        populate("/", depth, fanOut);
+    }
+
+    private void populate(String path, int depth, int fanOut) {
+        List<String> names = new ArrayList<String>(fanOut);
+        for (int i = 0; i < fanOut; i++) {
+            String name = (depth > 1 ? "folder" : "item") + i;
+            String childPath = getChildPath(path, name);
+            items.put(childPath, createData(childPath, depth > 1 ? FOLDER_TYPE : ITEM_TYPE));
+            names.add(name);
+            if (depth > 1) {
+                populate(childPath, depth - 1, fanOut);
+            }
+        }
+        children.put(path, names);
+    }
+
+    private static ExternalData createData(String path, String type) {
+        Map<String, String[]> properties = new HashMap<String, String[]>();
+        properties.put("text", new String[]{"Text of " + path});
+        return new ExternalData(path, path, type, properties);
+    }
+
+    private static String getChildPath(String path, String name) {
+        return path.endsWith("/") ? path + name : path + "/" + name;
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws RepositoryException {
+        List<String> names = children.get(path);
+        return names != null ? new ArrayList<String>(names) : Collections.<String>emptyList();
+    }
+
+    @Override
+    public List<ExternalData> getChildrenNodes(String path) throws RepositoryException {
+        List<ExternalData> result = new ArrayList<ExternalData>();
+        for (String name : getChildren(path)) {
+            result.add(getItemByPath(getChildPath(path, name)));
+        }
+        return result;
+    }
+
+    @Override
+    public ExternalData getItemByIdentifier(String identifier) throws ItemNotFoundException {
+        ExternalData data = items.get(identifier);
+        if (data == null) {
+            throw new ItemNotFoundException(identifier);
+        }
+        return data;
+    }
+
+    @Override
+    public ExternalData getItemByPath(String path) throws PathNotFoundException {
+        ExternalData data = items.get(path);
+        if (data == null) {
+            throw new PathNotFoundException(path);
+        }
+        return data;
+    }
+
+    @Override
+    public List<ExternalData> getItemsByPath(List<String> paths) throws RepositoryException {
+        List<ExternalData> result = new ArrayList<ExternalData>(paths.size());
+        for (String path : paths) {
+            ExternalData data = items.get(path);
+            if (data != null) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<ExternalData> getItemsByIdentifier(List<String> identifiers) throws RepositoryException {
+        return getItemsByPath(identifiers);
+    }
+
+    @Override
+    public Set<String> getSupportedNodeTypes() {
+        return new HashSet<String>(Arrays.asList(FOLDER_TYPE, ITEM_TYPE));
+    }
+
+    @Override
+    public boolean isSupportsHierarchicalIdentifiers() {
+        return true;
+    }
+
+    @Override
+    public boolean isSupportsUuid() {
+        return false;
+    }
+
+    @Override
+    public boolean itemExists(String path) {
+        return items.containsKey(path);
+    }
+
+    @Override
+    public void move(String oldPath, String newPath) throws RepositoryException {
+        throw new UnsupportedOperationException("move");
+    }
+
+    @Override
+    public void order(String path, List<String> children) throws RepositoryException {
+        this.children.put(path, new ArrayList<String>(children));
+    }
+
+    @Override
+    public void removeItemByPath(String path) throws RepositoryException {
+        items.remove(path);
+        children.remove(path);
+    }
+
+    @Override
+    public void saveItem(ExternalData data) throws RepositoryException {
+        items.put(data.getPath(), data);
+    }
+
+    @Override
+    public void saveItems(ExternalChangeSet changeSet) throws RepositoryException {
+        for (Map.Entry<String, List<String>> entry : changeSet.getOrderedChildren().entrySet()) {
+            order(entry.getKey(), entry.getValue());
+        }
+        for (ExternalData data : changeSet.getSavedItems()) {
+            items.put(data.getPath(), data);
+        }
+        for (String path : changeSet.getRemovedPaths()) {
+            removeItemByPath(path);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.jcr.RepositoryException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write path of <code>ExternalSessionImpl.save()</code>: building the change set of a session, then applying it in
+ * one batch or item by item, as done for the data sources that do not implement
+ * {@link ExternalDataSource.CanSaveItemsInBatch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int changes;
+
+    private InMemoryDataSource dataSource;
+
+    private Map<String, List<String>> orderedChildren;
+
+    private List<ExternalData> savedItems;
+
+    private List<String> removedPaths;
+
+    private ExternalChangeSet changeSet;
+
+    @Setup
+    public void setUp() {
+        dataSource = new InMemoryDataSource(2, 10);
+        orderedChildren = new LinkedHashMap<String, List<String>>();
+        savedItems = new ArrayList<ExternalData>(changes);
+        removedPaths = new ArrayList<String>();
+        // session order: children before their parent, so that the change set has to sort them
+        for (int i = changes - 1; i >= 0; i--) {
+            String path = "/new" + (i % 10) + (i >= 10 ? "/item" + i : "");
+            Map<String, String[]> properties = new HashMap<String, String[]>();
+            properties.put("text", new String[]{"Text " + i});
+            savedItems.add(new ExternalData(path, path, InMemoryDataSource.ITEM_TYPE, properties, true));
+        }
+        for (int i = 0; i < 10; i++) {
+            removedPaths.add("/folder" + i + "/item" + i);
+        }
+        orderedChildren.put("/", Arrays.asList("folder1", "folder0"));
+        changeSet = new ExternalChangeSet(orderedChildren, savedItems, removedPaths);
+    }
+
+    @Benchmark
+    public ExternalChangeSet createChangeSet() {
+        return new ExternalChangeSet(orderedChildren, savedItems, removedPaths);
+    }
+
+    @Benchmark
+    public void saveItemByItem() throws RepositoryException {
+        changeSet.applyItemByItem(dataSource);
+    }
+
+    @Benchmark
+    public void saveInBatch() throws RepositoryException {
+        dataSource.saveItems(changeSet);
+    }
+}
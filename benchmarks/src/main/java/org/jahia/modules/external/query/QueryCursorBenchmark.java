@@ -0,0 +1,129 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.query;
+
+import org.jahia.modules.external.ExternalQueryCursor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of the query results done by <code>ExternalQueryManager</code>: iterating the data source results through a
+ * {@link ListQueryCursor}, and merging them with the extension results through a {@link MergingQueryCursor}, with and
+ * without duplicates to exclude, and with a limit stopping the iteration early.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QueryCursorBenchmark {
+
+    @Param({"100", "10000"})
+    public int results;
+
+    private List<String> dataSourcePaths;
+
+    // one extension result for ten data source results
+    private List<String> extensionPaths;
+
+    // extension results which are also returned by the data source
+    private Set<String> duplicates;
+
+    @Setup
+    public void setUp() {
+        dataSourcePaths = new ArrayList<String>(results);
+        extensionPaths = new ArrayList<String>(results / 10);
+        duplicates = new HashSet<String>();
+        for (int i = 0; i < results; i++) {
+            String path = "/folder" + (i / 100) + "/item" + i;
+            dataSourcePaths.add(path);
+            if (i % 10 == 0) {
+                extensionPaths.add(path);
+                duplicates.add(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void listCursor(Blackhole blackhole) {
+        consume(new ListQueryCursor(dataSourcePaths), blackhole);
+    }
+
+    @Benchmark
+    public void merge(Blackhole blackhole) {
+        consume(new MergingQueryCursor(extensionPaths, new ListQueryCursor(dataSourcePaths), null, 0, -1), blackhole);
+    }
+
+    @Benchmark
+    public void mergeExcludingDuplicates(Blackhole blackhole) {
+        consume(new MergingQueryCursor(extensionPaths, new ListQueryCursor(dataSourcePaths), duplicates, 0, -1),
+                blackhole);
+    }
+
+    @Benchmark
+    public void mergeWithOffsetAndLimit(Blackhole blackhole) {
+        // second page of 20 results
+        consume(new MergingQueryCursor(Collections.<String>emptyList(), new ListQueryCursor(dataSourcePaths),
+                duplicates, 20, 20), blackhole);
+    }
+
+    @Benchmark
+    public long mergeSize() {
+        return new MergingQueryCursor(extensionPaths, new ListQueryCursor(dataSourcePaths), duplicates, 0, -1).getSize();
+    }
+
+    private static void consume(ExternalQueryCursor cursor, Blackhole blackhole) {
+        try {
+            while (cursor.hasNext()) {
+                blackhole.consume(cursor.next());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import org.apache.jackrabbit.core.security.JahiaLoginModule;
+import org.jahia.services.content.JCRStoreProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Provider level index of the paths having a node in the extension workspace, used to avoid querying the extension
+ * session for the external nodes that are not extended, which are usually the vast majority.
+ * <p>
+ * The index is loaded when the provider starts and is then kept up to date through JCR observation. Paths are added
+ * as soon as a session creates an extension node, before it is saved, so the index is always a superset of the
+ * existing extension nodes: an indexed path may not exist anymore, in which case the extension session is queried as
+ * before, but a path absent from the index never has an extension node.
+ * <p>
+ * Observation events are delivered asynchronously, so each path keeps the time it was last added: a removal event only
+ * removes the paths added before the removal happened, and not a node created again in the meantime. Paths are also
+ * added again on every successful lookup of an extension node, so that an entry missing for any other reason is
+ * restored.
+ */
+class ExtensionPathIndex implements EventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionPathIndex.class);
+
+    private static final String EXTENSION_NODE_TYPE = "jnt:externalProviderExtension";
+
+    private final JCRStoreProvider extensionProvider;
+
+    private final String mountPoint;
+
+    // indexed paths and the time they were last added at
+    private final ConcurrentNavigableMap<String, Long> paths = new ConcurrentSkipListMap<String, Long>();
+
+    private Session observationSession;
+
+    private volatile boolean loaded = false;
+
+    ExtensionPathIndex(JCRStoreProvider extensionProvider, String mountPoint) {
+        this.extensionProvider = extensionProvider;
+        this.mountPoint = mountPoint;
+    }
+
+    /**
+     * Registers the observation listener on the mount point, then loads the existing extension nodes.
+     *
+     * @throws RepositoryException if the extension workspace cannot be read
+     */
+    void start() throws RepositoryException {
+        observationSession = extensionProvider.getSession(JahiaLoginModule.getSystemCredentials(), "default");
+        observationSession.getWorkspace().getObservationManager().addEventListener(this,
+                Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED, mountPoint, true, null, null, false);
+        Session session = extensionProvider.getSession(JahiaLoginModule.getSystemCredentials(), "default");
+        try {
+            if (session.nodeExists(mountPoint)) {
+                load(session.getNode(mountPoint), "");
+            }
+        } finally {
+            session.logout();
+        }
+        loaded = true;
+        logger.info("Indexed {} extended paths for mount point {}", paths.size(), mountPoint);
+    }
+
+    void stop() {
+        loaded = false;
+        if (observationSession != null) {
+            try {
+                observationSession.getWorkspace().getObservationManager().removeEventListener(this);
+            } catch (RepositoryException e) {
+                logger.debug("Unable to unregister extension listener for " + mountPoint, e);
+            }
+            observationSession.logout();
+            observationSession = null;
+        }
+        paths.clear();
+    }
+
+    private void load(Node parent, String parentPath) throws RepositoryException {
+        NodeIterator it = parent.getNodes();
+        while (it.hasNext()) {
+            Node child = it.nextNode();
+            if (child.isNodeType(EXTENSION_NODE_TYPE)) {
+                String path = parentPath + "/" + child.getName();
+                paths.put(path, System.currentTimeMillis());
+                load(child, path);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the external node at the given path may have an extension node.
+     *
+     * @param path the path of the node, relative to the mount point
+     * @return <code>false</code> if the node has no extension node for sure
+     */
+    boolean mayExist(String path) {
+        return !loaded || "/".equals(path) || paths.containsKey(path);
+    }
+
+    /**
+     * Adds the given path and all its ancestors to the index, or refreshes the time they were added at.
+     *
+     * @param path the path of the extension node, relative to the mount point
+     */
+    void add(String path) {
+        Long now = System.currentTimeMillis();
+        while (path.length() > 1) {
+            paths.put(path, now);
+            path = path.substring(0, path.lastIndexOf('/'));
+        }
+    }
+
+    /**
+     * Removes the given path and all its descendants from the index, unless they have been added after the removal.
+     *
+     * @param path the path of the removed extension node, relative to the mount point
+     * @param date the time of the removal
+     */
+    void remove(String path, long date) {
+        removeIfOlder(path, paths.get(path), date);
+        // '0' directly follows '/' in the characters order
+        Iterator<Map.Entry<String, Long>> it = paths.subMap(path + "/", path + "0").entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            removeIfOlder(entry.getKey(), entry.getValue(), date);
+        }
+    }
+
+    private void removeIfOlder(String path, Long added, long date) {
+        if (added != null && added <= date) {
+            // does nothing if the path has been added again concurrently
+            paths.remove(path, added);
+        }
+    }
+
+    /**
+     * Indexes a moved subtree again from the workspace, as its descendants may already have been removed from the
+     * index by the removal event of the source node.
+     */
+    private void moved(String source, String destination, long date) throws RepositoryException {
+        if (source != null) {
+            remove(source, date);
+        }
+        add(destination);
+        if (observationSession.nodeExists(mountPoint + destination)) {
+            load(observationSession.getNode(mountPoint + destination), destination);
+        }
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                switch (event.getType()) {
+                    case Event.NODE_ADDED:
+                        String added = getRelativePath(event.getPath());
+                        if (added != null) {
+                            add(added);
+                        }
+                        break;
+                    case Event.NODE_REMOVED:
+                        String removed = getRelativePath(event.getPath());
+                        if (removed != null) {
+                            remove(removed, event.getDate());
+                        }
+                        break;
+                    case Event.NODE_MOVED:
+                        String source = getRelativePath((String) event.getInfo().get("srcAbsPath"));
+                        String destination = getRelativePath((String) event.getInfo().get("destAbsPath"));
+                        if (destination != null) {
+                            moved(source, destination, event.getDate());
+                        } else if (source != null) {
+                            remove(source, event.getDate());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (RepositoryException e) {
+                logger.warn("Unable to update the extension index of " + mountPoint + ", disabling it", e);
+                loaded = false;
+            }
+        }
+    }
+
+    private String getRelativePath(String absolutePath) {
+        if (absolutePath != null && absolutePath.startsWith(mountPoint + "/")) {
+            return absolutePath.substring(mountPoint.length());
+        }
+        return null;
+    }
+}
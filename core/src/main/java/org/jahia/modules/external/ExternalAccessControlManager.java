@@ -43,8 +43,8 @@
  */
 package org.jahia.modules.external;
 
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
-import org.apache.commons.collections.map.LRUMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.jackrabbit.commons.iterator.AccessControlPolicyIteratorAdapter;
 import org.apache.jackrabbit.core.security.JahiaLoginModule;
@@ -52,6 +52,7 @@ import org.apache.jackrabbit.core.security.JahiaPrivilegeRegistry;
 import org.jahia.api.Constants;
 import org.jahia.exceptions.JahiaRuntimeException;
 import org.jahia.jaas.JahiaPrincipal;
+import org.jahia.modules.external.acl.ExternalDataAcl;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionFactory;
 import org.jahia.settings.SettingsBean;
@@ -63,6 +64,7 @@ import javax.jcr.lock.LockException;
 import javax.jcr.security.*;
 import javax.jcr.version.VersionException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static javax.jcr.security.Privilege.*;
 
@@ -76,7 +78,10 @@ public class ExternalAccessControlManager implements AccessControlManager {
     private static final AccessControlPolicy[] POLICIES = new AccessControlPolicy[0];
 
     private Map<String, Boolean> pathPermissionCache = null;
+    private Map<String, Boolean> readPermissionCache = null;
     private Map<Object, AccessManagerUtils.CompiledAcl> compiledAcls = new HashMap<>();
+    private final Map<String, Privilege[]> workspacePrivileges = new ConcurrentHashMap<>();
+    private long permissionsStamp;
 
     private JahiaPrivilegeRegistry registry;
 
@@ -95,7 +100,9 @@ public class ExternalAccessControlManager implements AccessControlManager {
         this.aclReadOnly = dataSource instanceof ExternalDataSource.AccessControllable;
         this.writable = dataSource instanceof ExternalDataSource.Writable;
 
-        this.pathPermissionCache = Collections.synchronizedMap(new LRUMap(SettingsBean.getInstance().getAccessManagerPathPermissionCacheMaxSize()));
+        this.pathPermissionCache = createPermissionCache();
+        this.readPermissionCache = createPermissionCache();
+        this.permissionsStamp = session.getRepository().getStoreProvider().getPermissionsStamp();
         this.jahiaPrincipal = new JahiaPrincipal(session.getUserID(), session.getRealm(), session.getUserID().startsWith(JahiaLoginModule.SYSTEM), JahiaLoginModule.GUEST.equals(session.getUserID()));
         try {
             registry = new JahiaPrivilegeRegistry(namespaceRegistry);
@@ -158,6 +165,7 @@ public class ExternalAccessControlManager implements AccessControlManager {
             for (Privilege privilege : privileges) {
                 privs.add(privilege.getName());
             }
+            checkPermissionsStamp();
             String mountPoint = session.getRepository().getStoreProvider().getMountPoint();
             Session securitySession = JCRSessionFactory.getInstance().getCurrentSystemSession(session.getWorkspace().getName(), null, null);
             PathWrapper pathWrapper = new ExternalPathWrapperImpl(StringUtils.equals(absPath,"/")? mountPoint : mountPoint + absPath, securitySession);
@@ -166,6 +174,55 @@ public class ExternalAccessControlManager implements AccessControlManager {
         }
     }
 
+    /**
+     * Filters the given paths, keeping only the ones the current user can read, in the same order.
+     * <p>
+     * Paths are grouped by parent: the read permission of the parent is evaluated once, and reused for all the
+     * children that do not define an ACL of their own, neither through {@link ExternalData#getExternalDataAcl()} nor
+     * through their extension node. Other paths are checked one by one. Results are kept for the next calls of
+     * {@link #checkRead(String)}.
+     *
+     * @param paths the paths to check, relative to the mount point
+     * @return the readable paths
+     * @throws RepositoryException in case of error while checking the permissions
+     */
+    public List<String> filterReadable(List<String> paths) throws RepositoryException {
+        checkPermissionsStamp();
+        Map<String, List<String>> pathsByParent = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (!readPermissionCache.containsKey(path)) {
+                String parentPath = getParentPath(path);
+                List<String> children = pathsByParent.get(parentPath);
+                if (children == null) {
+                    children = new ArrayList<>();
+                    pathsByParent.put(parentPath, children);
+                }
+                children.add(path);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : pathsByParent.entrySet()) {
+            Set<String> withAcl = getPathsWithOwnAcl(entry.getKey(), entry.getValue());
+            Boolean parentReadable = null;
+            for (String path : entry.getValue()) {
+                if (withAcl.contains(path)) {
+                    canRead(path);
+                } else {
+                    if (parentReadable == null) {
+                        parentReadable = canRead(entry.getKey());
+                    }
+                    readPermissionCache.put(path, parentReadable);
+                }
+            }
+        }
+        List<String> readable = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (Boolean.TRUE.equals(readPermissionCache.get(path))) {
+                readable.add(path);
+            }
+        }
+        return readable;
+    }
+
     @Override
     public Privilege privilegeFromName(String privilegeName) throws AccessControlException, RepositoryException {
         try {
@@ -195,33 +252,131 @@ public class ExternalAccessControlManager implements AccessControlManager {
     }
 
     public void checkRead(String path) throws RepositoryException {
-        if (!hasPrivileges(path, new Privilege[]{registry.getPrivilege(JCR_READ + "_" + session.getWorkspace().getName(), null)})) {
+        if (!canRead(path)) {
             throw new PathNotFoundException(path);
         }
     }
 
     // JCR_MODIFY_PROPERTIES
     public void checkModify(String path) throws RepositoryException {
-        if (!hasPrivileges(path, new Privilege[]{registry.getPrivilege(JCR_MODIFY_PROPERTIES + "_" + session.getWorkspace().getName(), null)})) {
+        if (!hasPrivileges(path, getWorkspacePrivileges(JCR_MODIFY_PROPERTIES))) {
             throw new AccessDeniedException(path);
         }
     }
 
     //JCR_ADD_CHILD_NODES
     public void checkAddChildNodes(String path) throws RepositoryException {
-        if (!hasPrivileges(path, new Privilege[] {registry.getPrivilege(JCR_ADD_CHILD_NODES + "_" + session.getWorkspace().getName(), null)})) {
+        if (!hasPrivileges(path, getWorkspacePrivileges(JCR_ADD_CHILD_NODES))) {
             throw new AccessDeniedException(path);
         }
     }
     //JCR_REMOVE_NODE
     public void checkRemoveNode(String path) throws RepositoryException {
-        if (!hasPrivileges(path, new Privilege[] {registry.getPrivilege(JCR_REMOVE_NODE + "_" + session.getWorkspace().getName(), null)})) {
+        if (!hasPrivileges(path, getWorkspacePrivileges(JCR_REMOVE_NODE))) {
             throw new AccessDeniedException(path);
         }
     }
 
     public boolean canManageNodeTypes(String path) throws RepositoryException {
-        return hasPrivileges(path, new Privilege[] {registry.getPrivilege(JCR_NODE_TYPE_MANAGEMENT + "_" + session.getWorkspace().getName(), null)});
+        return hasPrivileges(path, getWorkspacePrivileges(JCR_NODE_TYPE_MANAGEMENT));
+    }
+
+    private boolean canRead(String path) throws RepositoryException {
+        checkPermissionsStamp();
+        Boolean granted = readPermissionCache.get(path);
+        if (granted == null && !StringUtils.equals(path, "/")) {
+            // reuse the permission of the parent if already known and the node does not define its own ACL
+            String parentPath = getParentPath(path);
+            Boolean parentGranted = readPermissionCache.get(parentPath);
+            if (parentGranted != null && getPathsWithOwnAcl(parentPath, Collections.singletonList(path)).isEmpty()) {
+                granted = parentGranted;
+                readPermissionCache.put(path, granted);
+            }
+        }
+        if (granted == null) {
+            granted = hasPrivileges(path, getWorkspacePrivileges(JCR_READ));
+            readPermissionCache.put(path, granted);
+        }
+        return granted;
+    }
+
+    /**
+     * Drops all the permissions evaluated so far by this session, as well as the compiled ACLs they were based on.
+     */
+    public void flushPermissionCaches() {
+        pathPermissionCache.clear();
+        readPermissionCache.clear();
+        compiledAcls.clear();
+    }
+
+    /**
+     * Flushes the permission caches if the ACLs of the mount may have changed since they were filled, in this session
+     * or in another one.
+     */
+    private void checkPermissionsStamp() {
+        long stamp = session.getRepository().getStoreProvider().getPermissionsStamp();
+        if (stamp != permissionsStamp) {
+            flushPermissionCaches();
+            permissionsStamp = stamp;
+        }
+    }
+
+    /**
+     * Returns the workspace specific privilege for the given JCR privilege, resolved once for this session.
+     */
+    private Privilege[] getWorkspacePrivileges(String privilegeName) throws RepositoryException {
+        Privilege[] privileges = workspacePrivileges.get(privilegeName);
+        if (privileges == null) {
+            privileges = new Privilege[] {registry.getPrivilege(privilegeName + "_" + workspaceName, null)};
+            workspacePrivileges.put(privilegeName, privileges);
+        }
+        return privileges;
+    }
+
+    /**
+     * Returns the paths among the given children of the parent path that may hold an ACL of their own. Children
+     * whose data is not loaded in the session, or that are not regular nodes, are always returned.
+     */
+    private Set<String> getPathsWithOwnAcl(String parentPath, List<String> paths) throws RepositoryException {
+        Set<String> withAcl = new HashSet<>();
+        for (String path : paths) {
+            String name = StringUtils.substringAfterLast(path, "/");
+            if (name.startsWith(ExternalSessionImpl.TRANSLATION_NODE_NAME_BASE) || name.equals(ExternalDataAcl.ACL_NODE_NAME)) {
+                withAcl.add(path);
+            } else if (aclReadOnly) {
+                ExternalData data = session.getLoadedData(path);
+                if (data == null || data.getExternalDataAcl() != null) {
+                    withAcl.add(path);
+                }
+            }
+        }
+        Session extensionSession = session.getExtensionSession();
+        if (extensionSession != null && withAcl.size() < paths.size()) {
+            String mountPoint = session.getRepository().getStoreProvider().getMountPoint();
+            if (extensionSession.itemExists(StringUtils.equals(parentPath, "/") ? mountPoint : mountPoint + parentPath)) {
+                for (String path : paths) {
+                    if (!withAcl.contains(path) && extensionSession.itemExists(mountPoint + path + "/" + ExternalDataAcl.ACL_NODE_NAME)) {
+                        withAcl.add(path);
+                    }
+                }
+            }
+        }
+        return withAcl;
+    }
+
+    private static String getParentPath(String path) {
+        String parentPath = StringUtils.substringBeforeLast(path, "/");
+        return parentPath.isEmpty() ? "/" : parentPath;
+    }
+
+    /**
+     * Creates a bounded permission cache, split in segments so that concurrent lookups do not contend on a single lock.
+     */
+    private static Map<String, Boolean> createPermissionCache() {
+        return CacheBuilder.newBuilder()
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .maximumSize(SettingsBean.getInstance().getAccessManagerPathPermissionCacheMaxSize())
+                .<String, Boolean>build().asMap();
     }
 
     private List<Privilege> getPrivilegesToFilter(Node node) {
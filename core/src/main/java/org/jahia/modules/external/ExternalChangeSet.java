@@ -0,0 +1,133 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.jcr.RepositoryException;
+import java.util.*;
+
+/**
+ * The changes of an {@link ExternalSessionImpl} to be written to the data source on save, grouped by kind and ordered
+ * so that they can be applied in sequence: orderings first, then the saved items, parents before their children, and
+ * finally the removed items, descendants before their ancestors.
+ * <p>
+ * Data sources implementing {@link ExternalDataSource.CanSaveItemsInBatch} receive the whole change set at once and
+ * can apply it in a single transaction, others get the changes one by one through
+ * {@link #applyItemByItem(ExternalDataSource.Writable)}.
+ */
+public class ExternalChangeSet {
+
+    private static final Comparator<String> DEPTH_COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(String path1, String path2) {
+            return StringUtils.countMatches(path1, "/") - StringUtils.countMatches(path2, "/");
+        }
+    };
+
+    private final Map<String, List<String>> orderedChildren;
+    private final List<ExternalData> savedItems;
+    private final List<String> removedPaths;
+
+    ExternalChangeSet(Map<String, List<String>> orderedChildren, Collection<ExternalData> savedItems, Collection<String> removedPaths) {
+        this.orderedChildren = Collections.unmodifiableMap(new LinkedHashMap<String, List<String>>(orderedChildren));
+
+        // stable sorts, keeping the session order for items at the same depth
+        List<ExternalData> saved = new ArrayList<ExternalData>(savedItems);
+        Collections.sort(saved, new Comparator<ExternalData>() {
+            @Override
+            public int compare(ExternalData data1, ExternalData data2) {
+                return DEPTH_COMPARATOR.compare(data1.getPath(), data2.getPath());
+            }
+        });
+        this.savedItems = Collections.unmodifiableList(saved);
+
+        List<String> removed = new ArrayList<String>(removedPaths);
+        Collections.sort(removed, Collections.reverseOrder(DEPTH_COMPARATOR));
+        this.removedPaths = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * @return the new order of the children, by path of the parent item
+     */
+    public Map<String, List<String>> getOrderedChildren() {
+        return orderedChildren;
+    }
+
+    /**
+     * @return the items to create or update, parents before their children
+     */
+    public List<ExternalData> getSavedItems() {
+        return savedItems;
+    }
+
+    /**
+     * @return the paths of the items to remove, descendants before their ancestors
+     */
+    public List<String> getRemovedPaths() {
+        return removedPaths;
+    }
+
+    public boolean isEmpty() {
+        return orderedChildren.isEmpty() && savedItems.isEmpty() && removedPaths.isEmpty();
+    }
+
+    /**
+     * Applies the changes one by one, using the per item methods of the given data source.
+     *
+     * @param dataSource the data source to write to
+     * @throws RepositoryException if one of the changes cannot be applied; the previous ones are not rolled back
+     */
+    public void applyItemByItem(ExternalDataSource.Writable dataSource) throws RepositoryException {
+        for (Map.Entry<String, List<String>> entry : orderedChildren.entrySet()) {
+            dataSource.order(entry.getKey(), entry.getValue());
+        }
+        for (ExternalData data : savedItems) {
+            dataSource.saveItem(data);
+        }
+        for (String path : removedPaths) {
+            dataSource.removeItemByPath(path);
+        }
+    }
+}
@@ -48,6 +48,9 @@ import org.apache.jackrabbit.commons.iterator.PropertyIteratorAdapter;
 import org.jahia.api.Constants;
 import org.jahia.exceptions.JahiaInitializationException;
 import org.jahia.exceptions.JahiaRuntimeException;
+import org.jahia.modules.external.monitoring.DataSourceMetrics;
+import org.jahia.services.SpringContextSingleton;
+import org.jahia.services.cache.ehcache.EhCacheProvider;
 import org.jahia.services.content.*;
 import org.jahia.services.content.nodetypes.Name;
 import org.jahia.services.content.nodetypes.NodeTypeRegistry;
@@ -59,7 +62,12 @@ import javax.jcr.*;
 import javax.jcr.query.QueryManager;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the {@link org.jahia.services.content.JCRStoreProvider} for the {@link org.jahia.modules.external.ExternalData}.
@@ -93,6 +101,24 @@ public class ExternalContentStoreProvider extends JCRStoreProvider implements In
     private boolean cacheKeyOnReferenceSupport = false;
     private boolean aclSupport = true;
 
+    private boolean dataCacheEnabled = false;
+    private int dataCacheMaxEntries = 10000;
+    private long dataCacheTimeToLive = 300;
+    private EhCacheProvider cacheProvider;
+    private ExternalDataCache dataCache;
+
+    private int prefetchBatchSize = 100;
+    private int prefetchThreads = 4;
+    private ExecutorService prefetchExecutor;
+
+    private final AtomicLong permissionsStamp = new AtomicLong();
+
+    private boolean extensionPathIndexEnabled = true;
+    private ExtensionPathIndex extensionPathIndex;
+
+    private boolean metricsEnabled = false;
+    private DataSourceMetrics metrics;
+
     public static ExternalSessionImpl getCurrentSession() {
         return currentSession.get();
     }
@@ -120,7 +146,7 @@ public class ExternalContentStoreProvider extends JCRStoreProvider implements In
                 systemSession.logout();
             }
         }
-        ExternalRepositoryImpl instance = new ExternalRepositoryImpl(this, dataSource, namespaceRegistry);
+        ExternalRepositoryImpl instance = new ExternalRepositoryImpl(this, metrics != null ? metrics.instrument(dataSource) : dataSource, namespaceRegistry);
         instance.setProviderKey(getKey());
 
         return instance;
@@ -154,10 +180,37 @@ public class ExternalContentStoreProvider extends JCRStoreProvider implements In
         }
 
         getId(); // initialize ID
+        if (dataCacheEnabled) {
+            if (cacheProvider == null) {
+                cacheProvider = (EhCacheProvider) SpringContextSingleton.getBean("ehCacheProvider");
+            }
+            dataCache = new ExternalDataCache(cacheProvider, getKey(), dataCacheMaxEntries, dataCacheTimeToLive);
+        }
+        if (dataSource instanceof ExternalDataSource.CanLoadItemsInBatch && slowConnection && prefetchThreads > 1) {
+            prefetchExecutor = ExternalItemPrefetcher.createExecutor(getKey(), prefetchThreads);
+        }
+        if (metricsEnabled) {
+            // kept across restarts, as the repository and its instrumented data source may be reused
+            if (metrics == null) {
+                metrics = new DataSourceMetrics(this);
+            }
+            metrics.register();
+        }
         if (dataSource instanceof ExternalDataSource.Initializable) {
             ((ExternalDataSource.Initializable) dataSource).start();
         }
-        return super.start(checkAvailability);
+        boolean started = super.start(checkAvailability);
+        if (started && extensionPathIndexEnabled && getExtensionProvider() != null) {
+            ExtensionPathIndex index = new ExtensionPathIndex(getExtensionProvider(), getMountPoint());
+            try {
+                index.start();
+                extensionPathIndex = index;
+            } catch (RepositoryException e) {
+                logger.warn("Unable to index the extended paths of " + getMountPoint() + ", extension nodes will be looked up for every node", e);
+                index.stop();
+            }
+        }
+        return started;
     }
 
     @Override
@@ -166,6 +219,21 @@ public class ExternalContentStoreProvider extends JCRStoreProvider implements In
         if (dataSource instanceof ExternalDataSource.Initializable) {
             ((ExternalDataSource.Initializable) dataSource).stop();
         }
+        if (dataCache != null) {
+            dataCache.dispose();
+            dataCache = null;
+        }
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+        if (extensionPathIndex != null) {
+            extensionPathIndex.stop();
+            extensionPathIndex = null;
+        }
+        if (metrics != null) {
+            metrics.unregister();
+        }
     }
 
     @Override
@@ -283,6 +351,160 @@ public class ExternalContentStoreProvider extends JCRStoreProvider implements In
         this.slowConnection = slowConnection;
     }
 
+    /**
+     * Returns the cache of external data shared by all the sessions of this provider.
+     *
+     * @return the shared data cache or <code>null</code> if it is not enabled for this provider
+     */
+    public ExternalDataCache getDataCache() {
+        return dataCache;
+    }
+
+    /**
+     * Returns a counter which changes each time the ACLs of this mount may have changed, so that the sessions can drop
+     * the permissions they evaluated before.
+     */
+    long getPermissionsStamp() {
+        return permissionsStamp.get();
+    }
+
+    /**
+     * Notifies the sessions of this provider that ACLs may have changed.
+     */
+    void permissionsChanged() {
+        permissionsStamp.incrementAndGet();
+    }
+
+    public boolean isDataCacheEnabled() {
+        return dataCacheEnabled;
+    }
+
+    /**
+     * Enables the cache of external data shared by all the sessions of this provider. Should only be enabled if the
+     * data source returns the same data whatever the user or workspace of the current session is.
+     * Disabled by default.
+     *
+     * @param dataCacheEnabled <code>true</code> to enable the shared data cache
+     */
+    public void setDataCacheEnabled(boolean dataCacheEnabled) {
+        this.dataCacheEnabled = dataCacheEnabled;
+    }
+
+    public int getDataCacheMaxEntries() {
+        return dataCacheMaxEntries;
+    }
+
+    public void setDataCacheMaxEntries(int dataCacheMaxEntries) {
+        this.dataCacheMaxEntries = dataCacheMaxEntries;
+    }
+
+    public long getDataCacheTimeToLive() {
+        return dataCacheTimeToLive;
+    }
+
+    /**
+     * @param dataCacheTimeToLive time to live, in seconds, of the entries of the shared data cache
+     */
+    public void setDataCacheTimeToLive(long dataCacheTimeToLive) {
+        this.dataCacheTimeToLive = dataCacheTimeToLive;
+    }
+
+    public int getPrefetchBatchSize() {
+        return prefetchBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of items requested at once from a {@link ExternalDataSource.CanLoadItemsInBatch} data
+     * source.
+     *
+     * @param prefetchBatchSize the maximum number of items per batch
+     */
+    public void setPrefetchBatchSize(int prefetchBatchSize) {
+        this.prefetchBatchSize = prefetchBatchSize;
+    }
+
+    /**
+     * Returns the number of children prefetched at once by node iterators: one batch per prefetch thread when batches
+     * are retrieved concurrently, a single batch otherwise.
+     */
+    int getPrefetchPageSize() {
+        int batchSize = Math.max(1, prefetchBatchSize);
+        return prefetchExecutor != null ? batchSize * prefetchThreads : batchSize;
+    }
+
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /**
+     * Sets the maximum number of batches retrieved concurrently from a {@link ExternalDataSource.CanLoadItemsInBatch}
+     * data source, for slow connection providers. A value lower than 2 disables concurrent retrieval.
+     *
+     * @param prefetchThreads the maximum number of concurrent batches
+     */
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    /**
+     * Returns the executor used to retrieve independent batches of items concurrently.
+     *
+     * @return the prefetch executor or <code>null</code> if batches are retrieved sequentially for this provider
+     */
+    public ExecutorService getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    public boolean isExtensionPathIndexEnabled() {
+        return extensionPathIndexEnabled;
+    }
+
+    /**
+     * Enables the in-memory index of the extended paths, which avoids looking up the extension workspace for the nodes
+     * that are not extended. Enabled by default.
+     *
+     * @param extensionPathIndexEnabled <code>false</code> to always look up the extension workspace
+     */
+    public void setExtensionPathIndexEnabled(boolean extensionPathIndexEnabled) {
+        this.extensionPathIndexEnabled = extensionPathIndexEnabled;
+    }
+
+    /**
+     * Returns the index of the paths having an extension node under this mount.
+     *
+     * @return the index, or <code>null</code> if not available
+     */
+    ExtensionPathIndex getExtensionPathIndex() {
+        return extensionPathIndex;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Enables the recording of the calls done to the data source (call counts, latencies and batch sizes by method),
+     * published in JMX and in the external provider administration. Disabled by default.
+     *
+     * @param metricsEnabled <code>true</code> to record the data source calls
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Returns the metrics of the calls done to the data source.
+     *
+     * @return the metrics, or <code>null</code> if they are not enabled for this provider
+     */
+    public DataSourceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setCacheProvider(EhCacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
     public List<String> getReservedNodes() {
         return reservedNodes;
     }
@@ -327,12 +549,20 @@ public class ExternalContentStoreProvider extends JCRStoreProvider implements In
      *             in case an internal identifier cannot be stored into the database
      */
     public String getOrCreateInternalIdentifier(String externalId) throws RepositoryException {
-        String internalId = getInternalIdentifier(externalId);
-        if (internalId == null) {
-            // not mapped yet -> store mapping
-            internalId = mapInternalIdentifier(externalId);
-        }
-        return internalId;
+        return getOrCreateInternalIdentifiers(Collections.singletonList(externalId)).get(externalId);
+    }
+
+    /**
+     * Get internal UUIDs of the specified nodes or generate new ones for the nodes which are not mapped yet, all at once
+     *
+     * @param externalIds
+     *            the external IDs to generate UUIDs for
+     * @return a map of the internal UUIDs by external ID
+     * @throws RepositoryException
+     *             in case internal identifiers cannot be stored into the database
+     */
+    public Map<String, String> getOrCreateInternalIdentifiers(Collection<String> externalIds) throws RepositoryException {
+        return getExternalProviderInitializerService().getOrCreateInternalIdentifiers(externalIds, getKey(), getId());
     }
 
     public PropertyIterator getWeakReferences(JCRNodeWrapper node, String propertyName, Session session) throws RepositoryException {
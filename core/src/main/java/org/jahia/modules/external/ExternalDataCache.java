@@ -0,0 +1,350 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.services.cache.ehcache.EhCacheProvider;
+
+import javax.jcr.Binary;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provider level (second level) cache of {@link ExternalData} and children names, shared by all the sessions of a mount.
+ * <p>
+ * Entries are immutable snapshots: data is copied when it is stored and copied again when it is returned, so that the
+ * modifications done by a session on its nodes never leak into the cache. Items holding non-lazy binary properties are
+ * not cached, as their {@link Binary} values are bound to resources opened by the data source.
+ * <p>
+ * The keys of the item and children entries are indexed, so that a subtree is invalidated without scanning the whole
+ * cache. Identifier entries only point to a path and are checked against the item found there, so they are left to
+ * expire when the item is invalidated.
+ * <p>
+ * The cache must only be enabled for data sources returning the same data whatever the user or workspace of the
+ * current session is.
+ *
+ * @see ExternalContentStoreProvider#setDataCacheEnabled(boolean)
+ */
+public class ExternalDataCache {
+
+    private static final String CACHE_NAME_PREFIX = "ExternalDataCache-";
+    private static final String ITEM_PREFIX = "p:";
+    private static final String CHILDREN_PREFIX = "c:";
+    private static final String IDENTIFIER_PREFIX = "i:";
+
+    private final Cache cache;
+    private final CacheManager cacheManager;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // sorted keys of the item and children entries, kept in sync with the cache by a listener
+    private final NavigableSet<String> pathKeys = new ConcurrentSkipListSet<String>();
+
+    // incremented on each invalidation, used to discard values loaded before a concurrent invalidation
+    private final AtomicLong stamp = new AtomicLong();
+
+    public ExternalDataCache(EhCacheProvider cacheProvider, String providerKey, int maxEntries, long timeToLiveSeconds) {
+        this.cacheManager = cacheProvider.getCacheManager();
+        String name = CACHE_NAME_PREFIX + providerKey;
+        if (cacheManager.cacheExists(name)) {
+            cacheManager.removeCache(name);
+        }
+        CacheConfiguration configuration = new CacheConfiguration(name, maxEntries).eternal(false)
+                .timeToLiveSeconds(timeToLiveSeconds);
+        cacheManager.addCache(new Cache(configuration));
+        this.cache = cacheManager.getCache(name);
+        cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+            @Override
+            public void notifyElementRemoved(Ehcache cache, Element element) {
+                pathKeys.remove(element.getObjectKey());
+            }
+
+            @Override
+            public void notifyElementExpired(Ehcache cache, Element element) {
+                pathKeys.remove(element.getObjectKey());
+            }
+
+            @Override
+            public void notifyElementEvicted(Ehcache cache, Element element) {
+                pathKeys.remove(element.getObjectKey());
+            }
+
+            @Override
+            public void notifyRemoveAll(Ehcache cache) {
+                pathKeys.clear();
+            }
+        });
+    }
+
+    /**
+     * Returns the current invalidation stamp. The stamp has to be read before calling the data source, and passed to
+     * the put methods, so that a value read concurrently with a write is not cached.
+     *
+     * @return the current invalidation stamp
+     */
+    public long getStamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Returns a copy of the cached data at the given path, or <code>null</code> if it is not cached.
+     */
+    public ExternalData getItemByPath(String path) {
+        Element element = cache.get(ITEM_PREFIX + path);
+        if (element == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy((ExternalData) element.getObjectValue());
+    }
+
+    /**
+     * Returns a copy of the cached data with the given identifier, or <code>null</code> if it is not cached.
+     */
+    public ExternalData getItemByIdentifier(String identifier) {
+        Element element = cache.get(IDENTIFIER_PREFIX + identifier);
+        if (element != null) {
+            Element item = cache.get(ITEM_PREFIX + element.getObjectValue());
+            if (item != null && identifier.equals(((ExternalData) item.getObjectValue()).getId())) {
+                hits.incrementAndGet();
+                return copy((ExternalData) item.getObjectValue());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the cached children names of the given path, or <code>null</code> if they are not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getChildren(String path) {
+        Element element = cache.get(CHILDREN_PREFIX + path);
+        if (element == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (List<String>) element.getObjectValue();
+    }
+
+    public void putItem(ExternalData data, long loadStamp) {
+        if (data == null || data.isNew() || (data.getBinaryProperties() != null && !data.getBinaryProperties().isEmpty())) {
+            return;
+        }
+        ExternalData snapshot = copy(data);
+        if (loadStamp == stamp.get()) {
+            pathKeys.add(ITEM_PREFIX + snapshot.getPath());
+            cache.put(new Element(ITEM_PREFIX + snapshot.getPath(), snapshot));
+            cache.put(new Element(IDENTIFIER_PREFIX + snapshot.getId(), snapshot.getPath()));
+            discardIfInvalidated(ITEM_PREFIX + snapshot.getPath(), loadStamp);
+        }
+    }
+
+    public void putChildren(String path, List<String> children, long loadStamp) {
+        List<String> snapshot = Collections.unmodifiableList(new ArrayList<String>(children));
+        if (loadStamp == stamp.get()) {
+            pathKeys.add(CHILDREN_PREFIX + path);
+            cache.put(new Element(CHILDREN_PREFIX + path, snapshot));
+            discardIfInvalidated(CHILDREN_PREFIX + path, loadStamp);
+        }
+    }
+
+    /**
+     * Removes an entry which has just been stored if an invalidation ran since the stamp was checked: the invalidation
+     * may have been done before the value was stored, which would then be stale.
+     */
+    private void discardIfInvalidated(String key, long loadStamp) {
+        if (loadStamp != stamp.get()) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * Removes the item at the given path and the children list of its parent.
+     *
+     * @param path the path of the saved item
+     */
+    public void invalidate(String path) {
+        stamp.incrementAndGet();
+        cache.remove(ITEM_PREFIX + path);
+        cache.remove(CHILDREN_PREFIX + path);
+        cache.remove(CHILDREN_PREFIX + getParentPath(path));
+    }
+
+    /**
+     * Removes the children list of the given path, e.g. after the children have been reordered.
+     *
+     * @param path the path of the parent item
+     */
+    public void invalidateChildren(String path) {
+        stamp.incrementAndGet();
+        cache.remove(CHILDREN_PREFIX + path);
+    }
+
+    /**
+     * Removes the item at the given path, all its descendants and the children list of its parent, e.g. after a
+     * remove or a move.
+     *
+     * @param path the root path of the subtree to invalidate
+     */
+    public void invalidateTree(String path) {
+        if (path.equals("/")) {
+            flush();
+            return;
+        }
+        invalidate(path);
+        removeDescendants(ITEM_PREFIX + path);
+        removeDescendants(CHILDREN_PREFIX + path);
+    }
+
+    private void removeDescendants(String key) {
+        // '0' is the character following '/', so the range holds all the keys starting with key + "/"
+        for (String descendantKey : new ArrayList<String>(pathKeys.subSet(key + "/", key + "0"))) {
+            cache.remove(descendantKey);
+            pathKeys.remove(descendantKey);
+        }
+    }
+
+    public void flush() {
+        stamp.incrementAndGet();
+        cache.removeAll();
+        pathKeys.clear();
+    }
+
+    public void dispose() {
+        flush();
+        cacheManager.removeCache(cache.getName());
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private static String getParentPath(String path) {
+        String parentPath = StringUtils.substringBeforeLast(path, "/");
+        return parentPath.isEmpty() ? "/" : parentPath;
+    }
+
+    /**
+     * Creates a copy of the data, detached from the maps and collections of the original one.
+     */
+    static ExternalData copy(ExternalData data) {
+        ExternalData result = new ExternalData(data.getId(), data.getPath(), data.getType(),
+                copyValues(data.getProperties()));
+        if (data.getMixin() != null) {
+            result.setMixin(new ArrayList<String>(data.getMixin()));
+        }
+        if (data.getI18nProperties() != null) {
+            Map<String, Map<String, String[]>> i18nProperties = new HashMap<String, Map<String, String[]>>();
+            for (Map.Entry<String, Map<String, String[]>> entry : data.getI18nProperties().entrySet()) {
+                i18nProperties.put(entry.getKey(), copyValues(entry.getValue()));
+            }
+            result.setI18nProperties(i18nProperties);
+        }
+        if (data.getBinaryProperties() != null) {
+            Map<String, Binary[]> binaryProperties = new HashMap<String, Binary[]>();
+            for (Map.Entry<String, Binary[]> entry : data.getBinaryProperties().entrySet()) {
+                binaryProperties.put(entry.getKey(), entry.getValue() != null ? entry.getValue().clone() : null);
+            }
+            result.setBinaryProperties(binaryProperties);
+        }
+        if (data.getLazyProperties() != null) {
+            result.setLazyProperties(new HashSet<String>(data.getLazyProperties()));
+        }
+        if (data.getLazyBinaryProperties() != null) {
+            result.setLazyBinaryProperties(new HashSet<String>(data.getLazyBinaryProperties()));
+        }
+        if (data.getLazyI18nProperties() != null) {
+            Map<String, Set<String>> lazyI18nProperties = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, Set<String>> entry : data.getLazyI18nProperties().entrySet()) {
+                lazyI18nProperties.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+            }
+            result.setLazyI18nProperties(lazyI18nProperties);
+        }
+        result.setExternalDataAcl(data.getExternalDataAcl());
+        return result;
+    }
+
+    /**
+     * Copies the map and the value arrays, which callers are free to modify.
+     */
+    private static Map<String, String[]> copyValues(Map<String, String[]> values) {
+        if (values == null) {
+            return null;
+        }
+        Map<String, String[]> result = new HashMap<String, String[]>(values.size());
+        for (Map.Entry<String, String[]> entry : values.entrySet()) {
+            result.put(entry.getKey(), entry.getValue() != null ? entry.getValue().clone() : null);
+        }
+        return result;
+    }
+}
@@ -109,6 +109,24 @@ public interface ExternalDataSource {
         List<String> search(ExternalQuery query) throws RepositoryException;
     }
 
+    /**
+     * If implemented, search results are read lazily through a cursor instead of being collected in a list, which keeps
+     * memory bounded for large result sets. The {@link Searchable#search(ExternalQuery)} method is still used by callers
+     * which need the whole list.
+     */
+    public interface StreamingSearchable extends Searchable {
+        /**
+         * Execute a search query and return a cursor over the matching node paths. The limit and offset of the query
+         * have to be read when this method is called, the query must not be referenced by the cursor.
+         *
+         * @param query The JCR Query, can be parsed with
+         * @return cursor over node paths
+         * @throws RepositoryException
+         * @see org.jahia.modules.external.query.QueryHelper
+         */
+        ExternalQueryCursor searchCursor(ExternalQuery query) throws RepositoryException;
+    }
+
     /**
      * If implemented, this interface allow and defines writing
      */
@@ -148,6 +166,20 @@ public interface ExternalDataSource {
         void saveItem(ExternalData data) throws RepositoryException;
     }
 
+    /**
+     * If implemented, the changes of a session are written all at once on save, instead of item by item.
+     */
+    public interface CanSaveItemsInBatch extends Writable {
+        /**
+         * Applies all the changes of a session save, preferably in a single transaction. Moves are not part of the
+         * change set, they are still applied immediately through {@link #move(String, String)}.
+         *
+         * @param changeSet the changes to write
+         * @throws RepositoryException if the changes cannot be applied
+         */
+        void saveItems(ExternalChangeSet changeSet) throws RepositoryException;
+    }
+
     /**
      * Implemented by a service that needs initialization/finalization logic during service life cycle.
      */
@@ -198,6 +230,30 @@ public interface ExternalDataSource {
         List<ExternalData> getChildrenNodes(String path) throws RepositoryException;
     }
 
+    /**
+     * If implemented, allows for batch access to items by paths or identifiers, so that the nodes of iterator pages,
+     * reference targets and query hits are retrieved with a few calls instead of one call per item. Independent batches
+     * can be requested concurrently on slow connection providers, implementations have to be thread safe and cannot
+     * rely on {@link ExternalContentStoreProvider#getCurrentSession()} in these methods.
+     */
+    interface CanLoadItemsInBatch {
+        /**
+         * Retrieves the items located at the specified paths. Paths which cannot be found are ignored.
+         *
+         * @param paths the paths of the items to retrieve
+         * @return the found items, in any order
+         */
+        List<ExternalData> getItemsByPath(List<String> paths) throws RepositoryException;
+
+        /**
+         * Retrieves the items with the specified identifiers. Identifiers which cannot be found are ignored.
+         *
+         * @param identifiers the identifiers of the items to retrieve
+         * @return the found items, in any order
+         */
+        List<ExternalData> getItemsByIdentifier(List<String> identifiers) throws RepositoryException;
+    }
+
     /**
      * If implemented, allows to check availability of the provider when the "/" node is read
      */
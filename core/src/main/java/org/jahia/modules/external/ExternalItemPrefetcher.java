@@ -0,0 +1,247 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Session level helper retrieving many items at once from a {@link ExternalDataSource.CanLoadItemsInBatch} data
+ * source. Requested paths or identifiers are split in batches; when the provider has a prefetch executor (slow
+ * connection providers), the batches are retrieved concurrently, otherwise one after the other. Concurrent batches only
+ * call the data source, the current session is not available to it there. Retrieved items go through the provider data
+ * cache when it is enabled.
+ */
+class ExternalItemPrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExternalItemPrefetcher.class);
+
+    private final ExternalSessionImpl session;
+
+    private final ExternalDataSource.CanLoadItemsInBatch dataSource;
+
+    private final ExternalContentStoreProvider storeProvider;
+
+    ExternalItemPrefetcher(ExternalSessionImpl session) {
+        this.session = session;
+        this.storeProvider = session.getRepository().getStoreProvider();
+        this.dataSource = (ExternalDataSource.CanLoadItemsInBatch) session.getRepository().getDataSource();
+    }
+
+    /**
+     * Retrieves the items at the specified paths, ignoring the ones which cannot be found.
+     */
+    List<ExternalData> getItemsByPath(List<String> paths) throws RepositoryException {
+        List<ExternalData> result = new ArrayList<ExternalData>(paths.size());
+        List<String> toLoad = paths;
+        ExternalDataCache dataCache = storeProvider.getDataCache();
+        if (dataCache != null) {
+            toLoad = new ArrayList<String>(paths.size());
+            for (String path : paths) {
+                ExternalData data = dataCache.getItemByPath(path);
+                if (data != null) {
+                    result.add(data);
+                } else {
+                    toLoad.add(path);
+                }
+            }
+        }
+        result.addAll(load(toLoad, true));
+        return result;
+    }
+
+    /**
+     * Retrieves the items with the specified external identifiers, ignoring the ones which cannot be found.
+     */
+    List<ExternalData> getItemsByIdentifier(List<String> identifiers) throws RepositoryException {
+        List<ExternalData> result = new ArrayList<ExternalData>(identifiers.size());
+        List<String> toLoad = identifiers;
+        ExternalDataCache dataCache = storeProvider.getDataCache();
+        if (dataCache != null) {
+            toLoad = new ArrayList<String>(identifiers.size());
+            for (String identifier : identifiers) {
+                ExternalData data = dataCache.getItemByIdentifier(identifier);
+                if (data != null) {
+                    result.add(data);
+                } else {
+                    toLoad.add(identifier);
+                }
+            }
+        }
+        result.addAll(load(toLoad, false));
+        return result;
+    }
+
+    private List<ExternalData> load(List<String> keys, final boolean byPath) throws RepositoryException {
+        if (keys.isEmpty()) {
+            return new ArrayList<ExternalData>();
+        }
+        ExternalDataCache dataCache = storeProvider.getDataCache();
+        long stamp = dataCache != null ? dataCache.getStamp() : 0;
+
+        int batchSize = Math.max(1, storeProvider.getPrefetchBatchSize());
+        List<List<String>> batches = new ArrayList<List<String>>();
+        for (int i = 0; i < keys.size(); i += batchSize) {
+            batches.add(keys.subList(i, Math.min(i + batchSize, keys.size())));
+        }
+
+        List<ExternalData> result = new ArrayList<ExternalData>(keys.size());
+        List<Future<List<ExternalData>>> futures = submit(batches, byPath);
+        if (futures == null) {
+            // may be called while the session is already the current one, e.g. on save
+            ExternalSessionImpl previousSession = ExternalContentStoreProvider.getCurrentSession();
+            ExternalContentStoreProvider.setCurrentSession(session);
+            try {
+                for (List<String> batch : batches) {
+                    result.addAll(loadBatch(batch, byPath));
+                }
+            } finally {
+                if (previousSession != null) {
+                    ExternalContentStoreProvider.setCurrentSession(previousSession);
+                } else {
+                    ExternalContentStoreProvider.removeCurrentSession();
+                }
+            }
+        } else {
+            try {
+                for (Future<List<ExternalData>> future : futures) {
+                    result.addAll(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel(futures);
+                throw new RepositoryException("Interrupted while prefetching items", e);
+            } catch (ExecutionException e) {
+                cancel(futures);
+                if (e.getCause() instanceof RepositoryException) {
+                    throw (RepositoryException) e.getCause();
+                }
+                throw new RepositoryException(e.getCause());
+            }
+        }
+
+        if (dataCache != null) {
+            for (ExternalData data : result) {
+                dataCache.putItem(data, stamp);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Submits the batches to the prefetch executor of the provider. The tasks only call the data source: the session
+     * is neither set nor accessed from the pool threads, the retrieved items are handled by the calling thread.
+     *
+     * @return the futures of the batches, or <code>null</code> if they have to be retrieved sequentially
+     */
+    private List<Future<List<ExternalData>>> submit(List<List<String>> batches, final boolean byPath) {
+        ExecutorService executor = storeProvider.getPrefetchExecutor();
+        if (executor == null || batches.size() == 1) {
+            return null;
+        }
+        List<Future<List<ExternalData>>> futures = new ArrayList<Future<List<ExternalData>>>(batches.size());
+        try {
+            for (final List<String> batch : batches) {
+                futures.add(executor.submit(new Callable<List<ExternalData>>() {
+                    @Override
+                    public List<ExternalData> call() throws Exception {
+                        return loadBatch(batch, byPath);
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            // the provider has been stopped in the meantime
+            logger.debug("Prefetch executor of provider {} is shut down, loading items sequentially", storeProvider.getKey());
+            cancel(futures);
+            return null;
+        }
+        return futures;
+    }
+
+    private List<ExternalData> loadBatch(List<String> batch, boolean byPath) throws RepositoryException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Prefetching {} items by {} from provider {}", new Object[] { batch.size(),
+                    byPath ? "path" : "identifier", storeProvider.getKey() });
+        }
+        return byPath ? dataSource.getItemsByPath(batch) : dataSource.getItemsByIdentifier(batch);
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Creates the bounded executor used to retrieve the batches of a provider concurrently, backed by daemon threads.
+     *
+     * @param providerKey the key of the provider, used to name the threads
+     * @param threads the maximum number of concurrent batches
+     * @return the executor
+     */
+    static ExecutorService createExecutor(final String providerKey, int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "external-prefetch-" + providerKey + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
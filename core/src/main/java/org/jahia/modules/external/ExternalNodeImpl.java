@@ -254,12 +254,12 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
                 try {
                     final ExternalDataSource dataSource = session.getRepository().getDataSource();
                     if (dataSource instanceof ExternalDataSource.CanLoadChildrenInBatch) {
-                        ExternalDataSource.CanLoadChildrenInBatch childrenLoader = (ExternalDataSource.CanLoadChildrenInBatch) dataSource;
-                        final List<ExternalData> childrenNodes = childrenLoader.getChildrenNodes(getPath());
+                        final List<ExternalData> childrenNodes = session.getChildrenData(getPath());
 
                         if (externalChildren == null) {
                             externalChildren = new ArrayList<String>(childrenNodes.size());
                         }
+                        session.prefetchInternalIdentifiers(childrenNodes);
 
                         for (ExternalData child : childrenNodes) {
                             String parentPath = StringUtils.substringBeforeLast(child.getPath(), "/");
@@ -273,7 +273,7 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
                             session.registerNode(node);
                         }
                     } else {
-                        externalChildren = new ArrayList<String>(dataSource.getChildren(getPath()));
+                        externalChildren = new ArrayList<String>(session.getChildrenNames(getPath()));
                     }
                 } finally {
                     ExternalContentStoreProvider.removeCurrentSession();
@@ -295,9 +295,7 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
     void setNew(boolean isNew) throws RepositoryException {
         super.setNew(isNew);
         if (!isNew) {
-            if (!data.getTmpId().equals(data.getId())) {
-                getSession().getRepository().getStoreProvider().getExternalProviderInitializerService().updateExternalIdentifier(data.getTmpId(), data.getId(), getSession().getRepository().getProviderKey(), false);
-            }
+            // the mapping of the temporary identifier is updated by the session, for all the new nodes at once
             data.markSaved();
         }
     }
@@ -1552,6 +1550,12 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
         String path = getPath();
         boolean isRoot = path.equals("/");
 
+        // skip the extension workspace for the nodes known as not extended
+        ExtensionPathIndex extensionPathIndex = getStoreProvider().getExtensionPathIndex();
+        if (!create && extensionPathIndex != null && !extensionPathIndex.mayExist(path)) {
+            return null;
+        }
+
         String mountPoint = getStoreProvider().getMountPoint();
         String globalPath = mountPoint + (isRoot ? "" : path);
 
@@ -1599,6 +1603,10 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
         }
 
         Node node = extensionSession.getNode(globalPath);
+        if (extensionPathIndex != null) {
+            // also restores a path which would have been removed by a late removal event
+            extensionPathIndex.add(path);
+        }
         if (create && isRoot && !node.isNodeType("jmix:hasExternalProviderExtension")) {
             node.addMixin("jmix:hasExternalProviderExtension");
         }
@@ -1780,6 +1788,7 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
     private class ExternalNodeIterator implements NodeIterator {
 
         private int pos = 0;
+        private int index = 0;
         private Iterator<String> it;
         private final List<String> list;
         private NodeIterator extensionNodeIterator;
@@ -1801,6 +1810,8 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
             if (it.hasNext()) {
                 Node next = null;
                 do {
+                    prefetchPage();
+                    index++;
                     try {
                         next = getNode(it.next());
                     } catch (RepositoryException e) {
@@ -1836,6 +1847,34 @@ public class ExternalNodeImpl extends ExternalItemImpl implements Node {
             return null;
         }
 
+        /**
+         * Loads the nodes of the next page in batch when starting a new page, if the data source supports it, and
+         * evaluates their read permissions at once. Nothing is done when the data source cannot load items in batch.
+         */
+        private void prefetchPage() {
+            if (session.getPrefetcher() == null) {
+                return;
+            }
+            int pageSize = session.getRepository().getStoreProvider().getPrefetchPageSize();
+            if (index % pageSize != 0) {
+                return;
+            }
+            try {
+                String path = getPath();
+                if (!path.endsWith("/")) {
+                    path += "/";
+                }
+                List<String> paths = new ArrayList<String>(pageSize);
+                for (String name : list.subList(index, Math.min(index + pageSize, list.size()))) {
+                    paths.add(path + name);
+                }
+                session.preloadNodes(paths);
+                controlManager.filterReadable(paths);
+            } catch (RepositoryException e) {
+                logger.debug("Unable to prefetch children of " + data.getPath() + ", they will be loaded one by one", e);
+            }
+        }
+
         @Override
         public Node nextNode() {
             if (nextNode == null) {
@@ -46,6 +46,8 @@ package org.jahia.modules.external;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.jackrabbit.value.BinaryImpl;
 import org.jahia.services.content.nodetypes.Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.jcr.*;
 import javax.jcr.lock.LockException;
@@ -55,7 +57,9 @@ import javax.jcr.version.VersionException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * Implementation of the {@link javax.jcr.Property} for the {@link org.jahia.modules.external.ExternalData}.
@@ -65,10 +69,13 @@ import java.util.Calendar;
  */
 public class ExternalPropertyImpl extends ExternalItemImpl implements Property {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExternalPropertyImpl.class);
+
     private ExternalNodeImpl node;
     private Name name;
     private Value[] values;
     private Value value;
+    private boolean referencesPrefetched;
 
     public ExternalPropertyImpl(Name name, ExternalNodeImpl node, ExternalSessionImpl session, Value value) throws RepositoryException {
         super(session);
@@ -205,9 +212,34 @@ public class ExternalPropertyImpl extends ExternalItemImpl implements Property {
             throw new ValueFormatException(getName() + " is a single-valued property,"
                     + " so it's value can not be retrieved as an array");
         }
+        if (!referencesPrefetched) {
+            referencesPrefetched = true;
+            prefetchReferences();
+        }
         return values;
     }
 
+    /**
+     * Loads the nodes referenced by a multi-valued reference property in batch, if the data source supports it, so that
+     * resolving the targets one by one does not cost one call each.
+     */
+    private void prefetchReferences() {
+        if (values == null || values.length < 2 || getSession().getPrefetcher() == null) {
+            return;
+        }
+        try {
+            List<String> identifiers = new ArrayList<String>(values.length);
+            for (Value v : values) {
+                if (v != null && (v.getType() == PropertyType.REFERENCE || v.getType() == PropertyType.WEAKREFERENCE)) {
+                    identifiers.add(v.getString());
+                }
+            }
+            getSession().preloadNodesByIdentifier(identifiers);
+        } catch (RepositoryException e) {
+            logger.debug("Unable to prefetch the targets of property " + name + ", they will be loaded one by one", e);
+        }
+    }
+
     public String getString() throws ValueFormatException, RepositoryException {
         checkRead();
         if (value != null) {
@@ -45,7 +45,9 @@ package org.jahia.modules.external;
 
 import org.jahia.services.content.JCRStoreProvider;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.jcr.RepositoryException;
 
@@ -96,6 +98,48 @@ public interface ExternalProviderInitializerService {
      */
     String getInternalIdentifier(String externalId, String providerKey) throws RepositoryException;
 
+    /**
+     * Reads the external IDs of the specified nodes via mapping table, with a single query.
+     *
+     * @param internalIds
+     *            the internal UUIDs of the nodes
+     * @return a map of the external IDs by internal UUID; UUIDs which are not mapped are not part of the map
+     * @throws RepositoryException
+     *             in case external identifiers cannot be retrieved from the database
+     */
+    Map<String, String> getExternalIdentifiers(Collection<String> internalIds) throws RepositoryException;
+
+    /**
+     * Reads internal UUIDs of the specified nodes via mapping table, using external IDs and provider key, with a single
+     * query for all the IDs which are not cached yet.
+     *
+     * @param externalIds
+     *            the external IDs to retrieve UUIDs for
+     * @param providerKey
+     *            the underlying provider key
+     * @return a map of the internal UUIDs by external ID; external IDs which are not mapped yet are not part of the map
+     * @throws RepositoryException
+     *             in case internal identifiers cannot be retrieved from the database or any other issue
+     */
+    Map<String, String> getInternalIdentifiers(Collection<String> externalIds, String providerKey) throws RepositoryException;
+
+    /**
+     * Reads internal UUIDs of the specified nodes via mapping table, using external IDs and provider key, and generates
+     * and stores in a single transaction the mappings which do not exist yet.
+     *
+     * @param externalIds
+     *            the external IDs to retrieve or generate UUIDs for
+     * @param providerKey
+     *            the underlying provider key
+     * @param providerId
+     *            the ID provider is using as a prefix for the UUIDs of nodes
+     * @return a map of the internal UUIDs by external ID, containing all the requested external IDs
+     * @throws RepositoryException
+     *             in case internal identifiers cannot be retrieved from or stored into the database
+     */
+    Map<String, String> getOrCreateInternalIdentifiers(Collection<String> externalIds, String providerKey, String providerId)
+            throws RepositoryException;
+
     /**
      * Returns internal provider ID for the specified provider. If the provider is not registered yet, creates an ID for it and stores an
      * entry in the database.
@@ -151,6 +195,19 @@ public interface ExternalProviderInitializerService {
     void updateExternalIdentifier(String oldExternalId, String newExternalId, String providerKey,
             boolean includeDescendants) throws RepositoryException;
 
+    /**
+     * Updates the external ID data for the specified entries in a single transaction, e.g. when the items created in a
+     * session get their final identifiers on save. Descendants are not updated.
+     *
+     * @param externalIds
+     *            the new external IDs to persist by original external ID
+     * @param providerKey
+     *            the underlying provider key
+     * @throws RepositoryException
+     *             in case of a DB operation failure
+     */
+    void updateExternalIdentifiers(Map<String, String> externalIds, String providerKey) throws RepositoryException;
+
     /**
      * @return the needed types to be override for locks.
      */
@@ -0,0 +1,73 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external;
+
+import java.util.Iterator;
+
+/**
+ * Lazy cursor over the paths of the nodes matching an {@link ExternalQuery}, returned by a
+ * {@link ExternalDataSource.StreamingSearchable} data source. Paths are read one by one while the query result is
+ * iterated, so that the first results are available before the whole result set is fetched and the result set never
+ * has to be held in memory.
+ * <p>
+ * The cursor is always read with the session of the query set as the current one (see
+ * {@link ExternalContentStoreProvider#getCurrentSession()}). It is closed once its last path is read, once the limit
+ * of the query is reached, or when a new iteration of the same query result starts. A query result which is only
+ * partially iterated and then dropped does not close its cursor, which must therefore not hold resources that are
+ * not released when it is garbage collected.
+ */
+public interface ExternalQueryCursor extends Iterator<String> {
+
+    /**
+     * Returns the number of paths of the cursor, if known in advance.
+     *
+     * @return the total number of paths, or -1 if not known
+     */
+    long getSize();
+
+    /**
+     * Releases the resources held by this cursor (statements, connections, streams). Further calls have no effect.
+     */
+    void close();
+}
@@ -96,11 +96,7 @@ public class ExternalSessionImpl implements Session {
     private Map<String,List<String>> nonOverridableProperties;
     private Map<String, Object> sessionVariables = new HashMap<String, Object>();
     private ExternalAccessControlManager accessControlManager;
-
-    private static volatile int fromCacheCount = 0;
-    private static volatile int totalCacheChecks = 0;
-    private static volatile int totalSavedCalls = 0;
-    private static final boolean DEBUG = false;
+    private ExternalItemPrefetcher prefetcher;
 
     public ExternalSessionImpl(ExternalRepositoryImpl repository, Credentials credentials, String workspaceName) {
         this.repository = repository;
@@ -145,25 +141,237 @@ public class ExternalSessionImpl implements Session {
     }
 
     private static ExternalNodeImpl getFromCache(String key, Map<String, ExternalNodeImpl> cache) {
+        return cache.get(key);
+    }
+
+    /**
+     * Returns the data of the node at the specified path if already loaded in this session, without calling the data source.
+     */
+    ExternalData getLoadedData(String path) {
+        if (changedData.containsKey(path)) {
+            return changedData.get(path);
+        }
+        ExternalNodeImpl node = getFromCacheByPath(path);
+        return node != null ? node.getData() : null;
+    }
+
+    /**
+     * Reads the data at the specified path from the provider data cache if enabled, or from the data source.
+     * Has to be called with this session set as the current one.
+     */
+    ExternalData getItemData(String path) throws PathNotFoundException {
+        ExternalDataCache dataCache = repository.getStoreProvider().getDataCache();
+        if (dataCache == null) {
+            return repository.getDataSource().getItemByPath(path);
+        }
+        ExternalData data = dataCache.getItemByPath(path);
+        if (data == null) {
+            long stamp = dataCache.getStamp();
+            data = repository.getDataSource().getItemByPath(path);
+            dataCache.putItem(data, stamp);
+        }
+        return data;
+    }
+
+    /**
+     * Reads the data with the specified identifier from the provider data cache if enabled, or from the data source.
+     * Has to be called with this session set as the current one.
+     */
+    ExternalData getItemDataByIdentifier(String identifier) throws ItemNotFoundException {
+        ExternalDataCache dataCache = repository.getStoreProvider().getDataCache();
+        if (dataCache == null) {
+            return repository.getDataSource().getItemByIdentifier(identifier);
+        }
+        ExternalData data = dataCache.getItemByIdentifier(identifier);
+        if (data == null) {
+            long stamp = dataCache.getStamp();
+            data = repository.getDataSource().getItemByIdentifier(identifier);
+            dataCache.putItem(data, stamp);
+        }
+        return data;
+    }
+
+    /**
+     * Reads the children names of the specified path from the provider data cache if enabled, or from the data source.
+     * Has to be called with this session set as the current one.
+     */
+    List<String> getChildrenNames(String path) throws RepositoryException {
+        ExternalDataCache dataCache = repository.getStoreProvider().getDataCache();
+        if (dataCache == null) {
+            return repository.getDataSource().getChildren(path);
+        }
+        List<String> children = dataCache.getChildren(path);
+        if (children == null) {
+            long stamp = dataCache.getStamp();
+            children = repository.getDataSource().getChildren(path);
+            dataCache.putChildren(path, children, stamp);
+        }
+        return children;
+    }
 
-        totalCacheChecks++;
+    /**
+     * Reads the children data of the specified path from the provider data cache if enabled and if all children are
+     * cached, or from the {@link ExternalDataSource.CanLoadChildrenInBatch} data source.
+     * Has to be called with this session set as the current one.
+     */
+    List<ExternalData> getChildrenData(String path) throws RepositoryException {
+        ExternalDataSource.CanLoadChildrenInBatch childrenLoader = (ExternalDataSource.CanLoadChildrenInBatch) repository.getDataSource();
+        ExternalDataCache dataCache = repository.getStoreProvider().getDataCache();
+        if (dataCache == null) {
+            return childrenLoader.getChildrenNodes(path);
+        }
+        List<String> names = dataCache.getChildren(path);
+        if (names != null) {
+            List<ExternalData> children = new ArrayList<ExternalData>(names.size());
+            for (String name : names) {
+                ExternalData child = dataCache.getItemByPath(path.equals("/") ? "/" + name : path + "/" + name);
+                if (child == null) {
+                    children = null;
+                    break;
+                }
+                children.add(child);
+            }
+            if (children != null) {
+                return children;
+            }
+        }
+        long stamp = dataCache.getStamp();
+        List<ExternalData> children = childrenLoader.getChildrenNodes(path);
+        names = new ArrayList<String>(children.size());
+        for (ExternalData child : children) {
+            String parentPath = StringUtils.substringBeforeLast(child.getPath(), "/");
+            if ((parentPath.isEmpty() ? "/" : parentPath).equals(path)) {
+                names.add(child.getName());
+            }
+            dataCache.putItem(child, stamp);
+        }
+        dataCache.putChildren(path, names, stamp);
+        return children;
+    }
 
-        if (cache.isEmpty()) {
-            totalSavedCalls += fromCacheCount;
-            if (DEBUG) {
-                logger.debug("Saved " + fromCacheCount + " calls out of " + totalCacheChecks + " since last cache reset. Total saved calls: " + totalSavedCalls);
+    /**
+     * Resolves with a single call the internal identifiers of the specified items which are mapped in the
+     * {@link ExternalProviderInitializerService}, so that building their nodes does not cost one database
+     * round-trip each.
+     */
+    void prefetchInternalIdentifiers(Collection<ExternalData> items) throws RepositoryException {
+        boolean supportsUuid = repository.getDataSource().isSupportsUuid();
+        Set<String> externalIds = new LinkedHashSet<String>();
+        for (ExternalData data : items) {
+            if (!supportsUuid || data.getId().startsWith(TRANSLATION_PREFIX)) {
+                externalIds.add(data.getId());
             }
-            fromCacheCount = 0;
-            totalCacheChecks = 0;
-            return null;
         }
+        if (externalIds.size() > 1) {
+            repository.getStoreProvider().getOrCreateInternalIdentifiers(externalIds);
+        }
+    }
 
-        final ExternalNodeImpl node = cache.get(key);
-        if(node != null) {
-            fromCacheCount++;
+    /**
+     * Returns the helper retrieving items in batches, if the data source supports it.
+     *
+     * @return the prefetcher or null if the data source does not implement
+     *         {@link ExternalDataSource.CanLoadItemsInBatch}
+     */
+    ExternalItemPrefetcher getPrefetcher() {
+        if (prefetcher == null && repository.getDataSource() instanceof ExternalDataSource.CanLoadItemsInBatch) {
+            prefetcher = new ExternalItemPrefetcher(this);
         }
+        return prefetcher;
+    }
 
-        return node;
+    /**
+     * Loads and registers the nodes at the specified paths which are not in the session yet, mapping their internal
+     * identifiers all at once. If the data source supports it, the items are retrieved in batches. Paths which cannot
+     * be resolved as plain external nodes are skipped and left to the regular {@link #getNode(String)} lookup.
+     */
+    public void preloadNodes(Collection<String> paths) throws RepositoryException {
+        List<String> toLoad = new ArrayList<String>();
+        for (String path : paths) {
+            String name = StringUtils.substringAfterLast(path, "/");
+            if (nodesByPath.containsKey(path) || deletedData.containsKey(path) || name.startsWith(TRANSLATION_NODE_NAME_BASE)
+                    || name.equals(ExternalDataAcl.ACL_NODE_NAME) || path.contains("/" + ExternalDataAcl.ACL_NODE_NAME + "/")
+                    || repository.getStoreProvider().getReservedNodes().contains(name)) {
+                continue;
+            }
+            toLoad.add(path);
+        }
+        if (toLoad.isEmpty()) {
+            return;
+        }
+
+        List<ExternalData> items;
+        ExternalItemPrefetcher itemPrefetcher = getPrefetcher();
+        if (itemPrefetcher != null) {
+            items = itemPrefetcher.getItemsByPath(toLoad);
+        } else {
+            items = new ArrayList<ExternalData>(toLoad.size());
+            ExternalContentStoreProvider.setCurrentSession(this);
+            try {
+                for (String path : toLoad) {
+                    try {
+                        items.add(getItemData(path));
+                    } catch (PathNotFoundException e) {
+                        // will be handled by the regular lookup
+                    }
+                }
+            } finally {
+                ExternalContentStoreProvider.removeCurrentSession();
+            }
+        }
+        registerLoadedNodes(items);
+    }
+
+    /**
+     * Loads and registers the nodes with the specified internal identifiers which belong to this provider and are not
+     * in the session yet, with batch calls. Does nothing if the data source does not support batch retrieval.
+     */
+    public void preloadNodesByIdentifier(Collection<String> identifiers) throws RepositoryException {
+        ExternalItemPrefetcher itemPrefetcher = getPrefetcher();
+        if (itemPrefetcher == null) {
+            return;
+        }
+        boolean supportsUuid = repository.getDataSource().isSupportsUuid();
+        String providerId = repository.getStoreProvider().getId();
+        Set<String> toLoad = new LinkedHashSet<String>();
+        for (String identifier : identifiers) {
+            if (identifier == null || nodesByIdentifier.containsKey(identifier) || identifier.startsWith(TRANSLATION_PREFIX)
+                    || identifier.startsWith(ExternalDataAcl.ACL_NODE_NAME) || identifier.startsWith(ACE_PREFIX)
+                    || (!supportsUuid && !identifier.startsWith(providerId))) {
+                continue;
+            }
+            toLoad.add(identifier);
+        }
+        if (toLoad.isEmpty()) {
+            return;
+        }
+        List<String> externalIds;
+        if (supportsUuid) {
+            externalIds = new ArrayList<String>(toLoad);
+        } else {
+            externalIds = new ArrayList<String>(repository.getStoreProvider().getExternalProviderInitializerService()
+                    .getExternalIdentifiers(toLoad).values());
+        }
+        if (!externalIds.isEmpty()) {
+            registerLoadedNodes(itemPrefetcher.getItemsByIdentifier(externalIds));
+        }
+    }
+
+    private void registerLoadedNodes(List<ExternalData> items) throws RepositoryException {
+        if (items.isEmpty()) {
+            return;
+        }
+        ExternalContentStoreProvider.setCurrentSession(this);
+        try {
+            prefetchInternalIdentifiers(items);
+            for (ExternalData data : items) {
+                if (!nodesByPath.containsKey(data.getPath()) && !deletedData.containsKey(data.getPath())) {
+                    registerNode(new ExternalNodeImpl(data, this));
+                }
+            }
+        } finally {
+            ExternalContentStoreProvider.removeCurrentSession();
+        }
     }
 
     public Node getRootNode() throws RepositoryException {
@@ -182,7 +390,7 @@ public class ExternalSessionImpl implements Session {
                     throw new RepositoryException("Provider '" + repository.getProviderKey() + "' is currently unavailable");
                 }
             }
-            ExternalData rootFileObject = repository.getDataSource().getItemByPath("/");
+            ExternalData rootFileObject = getItemData("/");
             final ExternalNodeImpl externalNode = new ExternalNodeImpl(rootFileObject, this);
             registerNode(externalNode);
             return externalNode;
@@ -267,7 +475,7 @@ public class ExternalSessionImpl implements Session {
         }
         ExternalContentStoreProvider.setCurrentSession(this);
         try {
-            Node n = new ExternalNodeImpl(repository.getDataSource().getItemByIdentifier(uuid), this);
+            Node n = new ExternalNodeImpl(getItemDataByIdentifier(uuid), this);
             if (deletedData.containsKey(n.getPath())) {
                 throw new ItemNotFoundException("This node has been deleted");
             }
@@ -332,7 +540,7 @@ public class ExternalSessionImpl implements Session {
                 // Try to get the item as a node
                 ExternalContentStoreProvider.setCurrentSession(this);
                 try {
-                    ExternalData data = repository.getDataSource().getItemByPath(path);
+                    ExternalData data = getItemData(path);
                     final ExternalNodeImpl node = new ExternalNodeImpl(data, this);
                     registerNode(node);
                     return node;
@@ -340,7 +548,7 @@ public class ExternalSessionImpl implements Session {
                     // Or a property in the parent node
                     ExternalNodeImpl parentFromPath = getFromCacheByPath(parentPath);
                     if (parentFromPath == null) {
-                        ExternalData data = repository.getDataSource().getItemByPath(parentPath);
+                        ExternalData data = getItemData(parentPath);
                         final ExternalNodeImpl node = new ExternalNodeImpl(data, this);
                         registerNode(node);
                         parentFromPath = node;
@@ -428,7 +636,7 @@ public class ExternalSessionImpl implements Session {
         } else {
             ExternalContentStoreProvider.setCurrentSession(this);
             try {
-                parentObject = repository.getDataSource().getItemByPath(parentPath);
+                parentObject = getItemData(parentPath);
                 final ExternalNodeImpl node = new ExternalNodeImpl(parentObject, this);
                 registerNode(node);
             } finally {
@@ -537,6 +745,11 @@ public class ExternalSessionImpl implements Session {
             try {
                 //todo : store move in session and move node in save
                 ((ExternalDataSource.Writable) repository.getDataSource()).move(source, dest);
+                ExternalDataCache dataCache = repository.getStoreProvider().getDataCache();
+                if (dataCache != null) {
+                    dataCache.invalidateTree(source);
+                    dataCache.invalidateTree(dest);
+                }
 
                 int oldIndex = previousParentChildren.indexOf(externalNode.getName());
                 previousParentChildren.remove(externalNode.getName());
@@ -576,6 +789,8 @@ public class ExternalSessionImpl implements Session {
             throws AccessDeniedException, ItemExistsException, ConstraintViolationException, InvalidItemStateException, VersionException, LockException, NoSuchNodeTypeException, RepositoryException {
         if (extensionSession != null && extensionSession.hasPendingChanges()) {
             extensionSession.save();
+            // ACLs and role assignments of external nodes are stored in the extension nodes
+            repository.getStoreProvider().permissionsChanged();
         }
         if (!(repository.getDataSource() instanceof ExternalDataSource.Writable)) {
             deletedData.clear();
@@ -585,47 +800,33 @@ public class ExternalSessionImpl implements Session {
         }
         ExternalContentStoreProvider.setCurrentSession(this);
         try {
-            Map<String, ExternalData> changedDataWithI18n = new LinkedHashMap<String, ExternalData>();
-            for (Map.Entry<String, ExternalData> entry : changedData.entrySet()) {
-                String path = entry.getKey();
-                ExternalData externalData = entry.getValue();
-                if (path.startsWith(TRANSLATION_NODE_NAME_BASE, path.lastIndexOf("/") + 1)) {
-                    String lang = StringUtils.substringAfterLast(path, TRANSLATION_NODE_NAME_BASE);
-                    String parentPath = StringUtils.substringBeforeLast(path, "/");
-                    ExternalData parentData;
-                    if (changedDataWithI18n.containsKey(parentPath)) {
-                        parentData = changedDataWithI18n.get(parentPath);
-                    } else {
-                        parentData = repository.getDataSource().getItemByPath(parentPath);
+            Map<String, ExternalData> changedDataWithI18n = mergeTranslations();
+            ExternalChangeSet changeSet = new ExternalChangeSet(orderedData, changedDataWithI18n.values(), deletedData.keySet());
+            ExternalDataSource.Writable writableDataSource = (ExternalDataSource.Writable) repository.getDataSource();
+            ExternalDataCache dataCache = repository.getStoreProvider().getDataCache();
+            try {
+                if (writableDataSource instanceof ExternalDataSource.CanSaveItemsInBatch) {
+                    ((ExternalDataSource.CanSaveItemsInBatch) writableDataSource).saveItems(changeSet);
+                } else {
+                    changeSet.applyItemByItem(writableDataSource);
+                }
+            } finally {
+                // changes may have been partially applied
+                if (dataCache != null) {
+                    for (String path : changeSet.getOrderedChildren().keySet()) {
+                        dataCache.invalidateChildren(path);
                     }
-                    Map<String, Map<String, String[]>> i18nProperties = parentData.getI18nProperties();
-                    if (i18nProperties == null) {
-                        i18nProperties = new HashMap<String, Map<String, String[]>>();
-                        parentData.setI18nProperties(i18nProperties);
+                    for (ExternalData data : changeSet.getSavedItems()) {
+                        dataCache.invalidate(data.getPath());
                     }
-                    i18nProperties.put(lang, externalData.getProperties());
-
-                    if (externalData.getLazyProperties() != null) {
-                        Map<String, Set<String>> lazyI18nProperties = parentData.getLazyI18nProperties();
-                        if (lazyI18nProperties == null) {
-                            lazyI18nProperties = new HashMap<String, Set<String>>();
-                            parentData.setLazyI18nProperties(lazyI18nProperties);
-                        }
-                        lazyI18nProperties.put(lang, externalData.getLazyProperties());
+                    for (String path : changeSet.getRemovedPaths()) {
+                        dataCache.invalidateTree(path);
                     }
-
-                    changedDataWithI18n.put(parentPath, parentData);
-                } else {
-                    changedDataWithI18n.put(path, externalData);
                 }
             }
-            ExternalDataSource.Writable writableDataSource = (ExternalDataSource.Writable) repository.getDataSource();
-            for (String path : orderedData.keySet()) {
-                writableDataSource.order(path, orderedData.get(path));
-            }
             orderedData.clear();
-            for (ExternalData data : changedDataWithI18n.values()) {
-                writableDataSource.saveItem(data);
+
+            for (ExternalData data : changeSet.getSavedItems()) {
                 // when data contain binaries we flush the nodes so the binary will be load
                 // from the external data source after an upload, avoid to cache a tmp binary after upload for exemple
                 if(data.getBinaryProperties() != null && data.getBinaryProperties().size() > 0) {
@@ -636,21 +837,30 @@ public class ExternalSessionImpl implements Session {
                     }
                 }
             }
-
             changedData.clear();
+
+            ExternalProviderInitializerService mappingService = getRepository().getStoreProvider().getExternalProviderInitializerService();
             if (!deletedData.isEmpty()) {
-                List<String> toBeDeleted = new LinkedList<String>();
-                for (String path : deletedData.keySet()) {
-                    writableDataSource.removeItemByPath(path);
-                    toBeDeleted.add(deletedData.get(path).getId());
+                List<String> toBeDeleted = new ArrayList<String>(deletedData.size());
+                for (ExternalData data : deletedData.values()) {
+                    toBeDeleted.add(data.getId());
                 }
-                getRepository()
-                        .getStoreProvider()
-                        .getExternalProviderInitializerService()
-                        .delete(toBeDeleted, getRepository().getStoreProvider().getKey(),
-                                getRepository().getDataSource().isSupportsHierarchicalIdentifiers());
+                mappingService.delete(toBeDeleted, getRepository().getStoreProvider().getKey(),
+                        getRepository().getDataSource().isSupportsHierarchicalIdentifiers());
                 deletedData.clear();
             }
+
+            // identifiers assigned by the data source to the new nodes
+            Map<String, String> updatedIdentifiers = new HashMap<String, String>();
+            for (ExternalItemImpl newItem : newItems) {
+                if (newItem instanceof ExternalNodeImpl) {
+                    ExternalData data = ((ExternalNodeImpl) newItem).getData();
+                    if (data.getTmpId() != null && !data.getTmpId().equals(data.getId())) {
+                        updatedIdentifiers.put(data.getTmpId(), data.getId());
+                    }
+                }
+            }
+            mappingService.updateExternalIdentifiers(updatedIdentifiers, getRepository().getProviderKey());
             for (ExternalItemImpl newItem : newItems) {
                 newItem.setNew(false);
             }
@@ -660,6 +870,69 @@ public class ExternalSessionImpl implements Session {
         }
     }
 
+    /**
+     * Returns the changed data, where the translation nodes are merged into the i18n properties of their parent.
+     * Parents which are not changed themselves are read from the data source, all at once when it is supported. The
+     * data cache is not used here: the parents are modified and written back, so they must not be stale nor shared.
+     */
+    private Map<String, ExternalData> mergeTranslations() throws RepositoryException {
+        Set<String> missingParents = new LinkedHashSet<String>();
+        for (String path : changedData.keySet()) {
+            if (path.startsWith(TRANSLATION_NODE_NAME_BASE, path.lastIndexOf("/") + 1)) {
+                String parentPath = StringUtils.substringBeforeLast(path, "/");
+                if (!changedData.containsKey(parentPath)) {
+                    missingParents.add(parentPath);
+                }
+            }
+        }
+        Map<String, ExternalData> parents = new HashMap<String, ExternalData>();
+        ExternalDataSource dataSource = repository.getDataSource();
+        if (missingParents.size() > 1 && dataSource instanceof ExternalDataSource.CanLoadItemsInBatch) {
+            for (ExternalData data : ((ExternalDataSource.CanLoadItemsInBatch) dataSource).getItemsByPath(
+                    new ArrayList<String>(missingParents))) {
+                parents.put(data.getPath(), data);
+            }
+        }
+
+        Map<String, ExternalData> changedDataWithI18n = new LinkedHashMap<String, ExternalData>();
+        for (Map.Entry<String, ExternalData> entry : changedData.entrySet()) {
+            String path = entry.getKey();
+            ExternalData externalData = entry.getValue();
+            if (path.startsWith(TRANSLATION_NODE_NAME_BASE, path.lastIndexOf("/") + 1)) {
+                String lang = StringUtils.substringAfterLast(path, TRANSLATION_NODE_NAME_BASE);
+                String parentPath = StringUtils.substringBeforeLast(path, "/");
+                ExternalData parentData;
+                if (changedDataWithI18n.containsKey(parentPath)) {
+                    parentData = changedDataWithI18n.get(parentPath);
+                } else if (parents.containsKey(parentPath)) {
+                    parentData = parents.get(parentPath);
+                } else {
+                    parentData = dataSource.getItemByPath(parentPath);
+                }
+                Map<String, Map<String, String[]>> i18nProperties = parentData.getI18nProperties();
+                if (i18nProperties == null) {
+                    i18nProperties = new HashMap<String, Map<String, String[]>>();
+                    parentData.setI18nProperties(i18nProperties);
+                }
+                i18nProperties.put(lang, externalData.getProperties());
+
+                if (externalData.getLazyProperties() != null) {
+                    Map<String, Set<String>> lazyI18nProperties = parentData.getLazyI18nProperties();
+                    if (lazyI18nProperties == null) {
+                        lazyI18nProperties = new HashMap<String, Set<String>>();
+                        parentData.setLazyI18nProperties(lazyI18nProperties);
+                    }
+                    lazyI18nProperties.put(lang, externalData.getLazyProperties());
+                }
+
+                changedDataWithI18n.put(parentPath, parentData);
+            } else {
+                changedDataWithI18n.put(path, externalData);
+            }
+        }
+        return changedDataWithI18n;
+    }
+
     public void refresh(boolean keepChanges) throws RepositoryException {
         if (!keepChanges) {
             deletedData.clear();
@@ -668,6 +941,9 @@ public class ExternalSessionImpl implements Session {
             newItems.clear();
             nodesByPath.clear();
             nodesByIdentifier.clear();
+            if (accessControlManager != null) {
+                accessControlManager.flushPermissionCaches();
+            }
         } else {
             List<String> pathsToKeep = new ArrayList<String>();
             pathsToKeep.addAll(changedData.keySet());
@@ -104,6 +104,11 @@ public class ExternalWorkspaceImpl implements Workspace {
             try {
                 ((ExternalDataSource.Writable) externalSession.getRepository().getDataSource()).move(source, dest);
             } finally {
+                ExternalDataCache dataCache = externalSession.getRepository().getStoreProvider().getDataCache();
+                if (dataCache != null) {
+                    dataCache.invalidateTree(source);
+                    dataCache.invalidateTree(dest);
+                }
                 ExternalContentStoreProvider.removeCurrentSession();
             }
         } else {
@@ -43,6 +43,8 @@
  */
 package org.jahia.modules.external.admin;
 
+import org.jahia.modules.external.monitoring.MethodStatistics;
+
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +65,8 @@ public class DataSourceInfo implements Serializable {
     private List<String> overridableItems;
     private List<String> nonOverridableItems;
     private List<String> extendableTypes;
+    private List<MethodStatistics> methodStatistics;
+    private Double dataCacheHitRatio;
 
     public String getClazz() {
         return clazz;
@@ -175,4 +179,20 @@ public class DataSourceInfo implements Serializable {
     public void setExtendableTypes(List<String> extendableTypes) {
         this.extendableTypes = extendableTypes;
     }
+
+    public List<MethodStatistics> getMethodStatistics() {
+        return methodStatistics;
+    }
+
+    public void setMethodStatistics(List<MethodStatistics> methodStatistics) {
+        this.methodStatistics = methodStatistics;
+    }
+
+    public Double getDataCacheHitRatio() {
+        return dataCacheHitRatio;
+    }
+
+    public void setDataCacheHitRatio(Double dataCacheHitRatio) {
+        this.dataCacheHitRatio = dataCacheHitRatio;
+    }
 }
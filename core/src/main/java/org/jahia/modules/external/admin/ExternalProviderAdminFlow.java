@@ -145,6 +145,13 @@ public class ExternalProviderAdminFlow implements Serializable {
         dataSourceInfo.setNonOverridableItems(provider.getNonOverridableItems());
         dataSourceInfo.setExtendableTypes(provider.getExtendableTypes());
 
+        if (provider.getMetrics() != null) {
+            dataSourceInfo.setMethodStatistics(provider.getMetrics().getMethodStatistics());
+        }
+        if (provider.getDataCache() != null) {
+            dataSourceInfo.setDataCacheHitRatio(provider.getDataCache().getHitRatio());
+        }
+
         if (dataSourceInfo.isSearchable()) {
             dataSourceInfo.setSupportedQueries(new LinkedHashMap<String, Boolean>());
 
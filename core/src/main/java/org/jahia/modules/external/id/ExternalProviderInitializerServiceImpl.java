@@ -47,7 +47,10 @@ import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.*;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.internal.util.*;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.Type;
 import org.jahia.modules.external.ExternalProviderInitializerService;
 import org.jahia.services.cache.ehcache.EhCacheProvider;
 import org.jahia.services.content.JCRStoreProvider;
@@ -55,9 +58,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.RepositoryException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 
 /**
@@ -69,11 +82,23 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
 
     private static final Logger logger = LoggerFactory.getLogger(ExternalProviderInitializerServiceImpl.class);
 
+    // maximum number of parameters / statements sent to the database at once
+    private static final int BATCH_SIZE = 500;
+
+    // maximum number of 'like' conditions per statement, as they are evaluated against the externalId CLOB
+    private static final int DESCENDANTS_BATCH_SIZE = 20;
+
+    // time to live of the cache entries of unmapped external IDs: they are not invalidated on the other cluster nodes
+    // when a mapping is created, so they must not be trusted for long
+    private static final int UNMAPPED_TIME_TO_LIVE = 60;
+
+    private static final String INSERT_MAPPING_SQL = "insert into jahia_external_mapping (internalUuid, externalId, externalIdHash, providerKey) values (?, ?, ?, ?)";
+
     private SessionFactory hibernateSessionFactory;
 
     private EhCacheProvider cacheProvider;
-    // The ID mapping cache, where a key is a <providerKey>-<externalId-hashCode> and a value is
-    // the corresponding internalId
+    // The ID mapping cache, where a key is a <providerKey>-<externalId-hashCode> and a value is a String[] holding
+    // the full externalId and the corresponding internalId (null if the externalId is known not to be mapped yet)
     private Cache idCache;
 
     private List<String> overridableItemsForLocks;
@@ -91,38 +116,46 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
         }
         StatelessSession session = null;
         try {
-            List<Integer> hashes = new LinkedList<Integer>();
-            for (String externalId : externalIds) {
-                int hash = externalId.hashCode();
-                hashes.add(hash);
-            }
             session = hibernateSessionFactory.openStatelessSession();
             session.beginTransaction();
 
-            // delete all
-            session.createQuery(
-                    "delete from UuidMapping where providerKey=:providerKey and externalIdHash in (:externalIds)")
-                    .setString("providerKey", providerKey).setParameterList("externalIds", hashes).executeUpdate();
+            // only delete the mappings of the exact external IDs, not the ones colliding on the hash code
+            List<String> uuids = new ArrayList<String>(findMappings(session, externalIds, providerKey).values());
+            for (List<String> chunk : partition(uuids)) {
+                session.createQuery("delete from UuidMapping where internalUuid in (:uuids)")
+                        .setParameterList("uuids", chunk).executeUpdate();
+            }
 
+            Set<Integer> invalidate = new HashSet<Integer>();
             if (includeDescendants) {
-                // delete descendants
-                Query selectStmt = session.createQuery("from UuidMapping where providerKey=:providerKey and externalId like :externalId").setString("providerKey", providerKey);
-                for (String externalId : externalIds) {
-                    selectStmt.setString("externalId", externalId + "/%");
-                    List<?> descendants = selectStmt.list();
-
-                    for (Object mapping : descendants) {
-                        UuidMapping m = (UuidMapping) mapping;
-                        session.delete(m);
-                        invalidateCache(m.getExternalIdHash(), providerKey);
+                // delete descendants with one statement per small chunk of subtree roots
+                for (List<String> chunk : partition(getRoots(externalIds), DESCENDANTS_BATCH_SIZE)) {
+                    StringBuilder condition = new StringBuilder();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        condition.append(i > 0 ? " or " : "").append("externalId like :externalId").append(i);
+                    }
+                    String where = "from UuidMapping where providerKey=:providerKey and (" + condition + ")";
+                    Query selectStmt = session.createQuery("select externalIdHash " + where);
+                    Query deleteStmt = session.createQuery("delete " + where);
+                    selectStmt.setString("providerKey", providerKey);
+                    deleteStmt.setString("providerKey", providerKey);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        selectStmt.setString("externalId" + i, chunk.get(i) + "/%");
+                        deleteStmt.setString("externalId" + i, chunk.get(i) + "/%");
                     }
+                    for (Object hash : selectStmt.list()) {
+                        invalidate.add((Integer) hash);
+                    }
+                    deleteStmt.executeUpdate();
                 }
             }
 
             session.getTransaction().commit();
 
             for (String externalId : externalIds) {
-                int hash = externalId.hashCode();
+                invalidate.add(externalId.hashCode());
+            }
+            for (Integer hash : invalidate) {
                 invalidateCache(hash, providerKey);
             }
         } catch (Exception e) {
@@ -167,6 +200,39 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
         return externalId;
     }
 
+    @Override
+    public Map<String, String> getExternalIdentifiers(Collection<String> internalIds) throws RepositoryException {
+        Map<String, String> result = new HashMap<String, String>();
+        if (internalIds.isEmpty()) {
+            return result;
+        }
+        StatelessSession session = null;
+        try {
+            session = getHibernateSessionFactory().openStatelessSession();
+            session.beginTransaction();
+            for (List<String> chunk : partition(new LinkedHashSet<String>(internalIds))) {
+                List<?> list = session.createQuery("from UuidMapping where internalUuid in (:uuids)")
+                        .setParameterList("uuids", chunk).setReadOnly(true).list();
+                for (Object o : list) {
+                    UuidMapping mapping = (UuidMapping) o;
+                    result.put(mapping.getInternalUuid(), mapping.getExternalId());
+                }
+            }
+            session.getTransaction().commit();
+        } catch (Exception e) {
+            if (session != null) {
+                session.getTransaction().rollback();
+            }
+            throw new RepositoryException(e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+
+        return result;
+    }
+
     public SessionFactory getHibernateSessionFactory() {
         return hibernateSessionFactory;
     }
@@ -177,34 +243,257 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
 
     @Override
     public String getInternalIdentifier(String externalId, String providerKey) throws RepositoryException {
-        int hash = externalId.hashCode();
-        String cacheKey = getCacheKey(hash, providerKey);
-        String uuid = getIdentifierCache().get(cacheKey) != null ? (String)getIdentifierCache().get(cacheKey).getObjectValue() : null;
-        if (uuid == null) {
-            StatelessSession session = null;
-            try {
-                session = getHibernateSessionFactory().openStatelessSession();
-                session.beginTransaction();
-                List<?> list = session.createQuery("from UuidMapping where providerKey=:providerKey and externalIdHash=:idHash")
-                        .setString("providerKey", providerKey).setLong("idHash", hash).setReadOnly(true).list();
-                if (list.size() > 0) {
-                    uuid = ((UuidMapping) list.get(0)).getInternalUuid();
-                    getIdentifierCache().put(new Element(cacheKey, uuid, true));
+        return getInternalIdentifiers(Collections.singletonList(externalId), providerKey).get(externalId);
+    }
+
+    @Override
+    public Map<String, String> getInternalIdentifiers(Collection<String> externalIds, String providerKey)
+            throws RepositoryException {
+        Map<String, String> result = new HashMap<String, String>();
+        Set<String> missing = new LinkedHashSet<String>();
+        for (String externalId : externalIds) {
+            String[] cached = getFromCache(externalId, providerKey);
+            if (cached == null) {
+                missing.add(externalId);
+            } else if (cached[1] != null) {
+                result.put(externalId, cached[1]);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        StatelessSession session = null;
+        try {
+            session = getHibernateSessionFactory().openStatelessSession();
+            session.beginTransaction();
+            Map<String, String> found = findMappings(session, missing, providerKey);
+            session.getTransaction().commit();
+
+            for (String externalId : missing) {
+                String uuid = found.get(externalId);
+                if (uuid != null) {
+                    result.put(externalId, uuid);
                 }
-                session.getTransaction().commit();
-            } catch (Exception e) {
-                if (session != null) {
-                    session.getTransaction().rollback();
+                // also cache the unmapped IDs to avoid querying them again
+                putInCache(externalId, uuid, providerKey);
+            }
+        } catch (Exception e) {
+            if (session != null) {
+                session.getTransaction().rollback();
+            }
+            throw new RepositoryException(e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getOrCreateInternalIdentifiers(Collection<String> externalIds, String providerKey,
+            String providerId) throws RepositoryException {
+        Map<String, String> result = new HashMap<String, String>();
+        Set<String> missing = new LinkedHashSet<String>();
+        for (String externalId : externalIds) {
+            // unmapped entries in cache may be outdated (e.g. mapping created by another cluster node): check them in DB
+            String[] cached = getFromCache(externalId, providerKey);
+            if (cached != null && cached[1] != null) {
+                result.put(externalId, cached[1]);
+            } else {
+                missing.add(externalId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Session session = null;
+        Thread currentThread = Thread.currentThread();
+        ClassLoader previousClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(this.getClass().getClassLoader());
+        try {
+            session = getHibernateSessionFactory().openSession();
+            session.beginTransaction();
+            Map<String, String> found = findMappings(session, missing, providerKey);
+            List<UuidMapping> toCreate = new ArrayList<UuidMapping>();
+            for (String externalId : missing) {
+                String uuid = found.get(externalId);
+                if (uuid == null) {
+                    UuidMapping uuidMapping = new UuidMapping();
+                    uuidMapping.setExternalId(externalId);
+                    uuidMapping.setProviderKey(providerKey);
+                    uuidMapping.setInternalUuid(generateInternalIdentifier(providerId));
+                    toCreate.add(uuidMapping);
+                    uuid = uuidMapping.getInternalUuid();
                 }
-                throw new RepositoryException(e);
-            } finally {
-                if (session != null) {
-                    session.close();
+                result.put(externalId, uuid);
+            }
+            if (!toCreate.isEmpty()) {
+                insertMappings(session, toCreate);
+            }
+            session.getTransaction().commit();
+
+            // cache them
+            for (String externalId : missing) {
+                putInCache(externalId, result.get(externalId), providerKey);
+            }
+        } catch (Exception e) {
+            if (session != null) {
+                session.getTransaction().rollback();
+            }
+            throw new RepositoryException("Error storing mappings for " + missing.size() + " external nodes [provider: "
+                    + providerKey + "]", e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+            currentThread.setContextClassLoader(previousClassLoader);
+        }
+
+        return result;
+    }
+
+    /**
+     * Inserts the mappings in JDBC batches, whatever the hibernate.jdbc.batch_size of the session factory is. The
+     * external ID is bound through its Hibernate type, so that it gets the same LOB handling as an entity insert.
+     */
+    private void insertMappings(final Session session, final List<UuidMapping> mappings) {
+        final Type externalIdType = getHibernateSessionFactory().getClassMetadata(UuidMapping.class)
+                .getPropertyType("externalId");
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(INSERT_MAPPING_SQL);
+                try {
+                    int count = 0;
+                    for (UuidMapping mapping : mappings) {
+                        statement.setString(1, mapping.getInternalUuid());
+                        externalIdType.nullSafeSet(statement, mapping.getExternalId(), 2, (SessionImplementor) session);
+                        statement.setInt(3, mapping.getExternalIdHash());
+                        statement.setString(4, mapping.getProviderKey());
+                        statement.addBatch();
+                        if (++count % BATCH_SIZE == 0) {
+                            statement.executeBatch();
+                        }
+                    }
+                    if (count % BATCH_SIZE != 0) {
+                        statement.executeBatch();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Looks up the mappings of the specified external IDs, querying by chunks of hash codes and keeping only the rows
+     * whose full external ID matches, so that hash collisions never resolve to the UUID of another node.
+     */
+    private Map<String, String> findMappings(SharedSessionContract session, Collection<String> externalIds,
+            String providerKey) {
+        Map<String, String> found = new HashMap<String, String>();
+        for (UuidMapping mapping : loadMappings(session, externalIds, providerKey, true)) {
+            found.put(mapping.getExternalId(), mapping.getInternalUuid());
+        }
+        return found;
+    }
+
+    /**
+     * Loads the mapping entities of the specified external IDs, with the same hash code based lookup as
+     * {@link #findMappings(SharedSessionContract, Collection, String)}.
+     */
+    private List<UuidMapping> loadMappings(SharedSessionContract session, Collection<String> externalIds,
+            String providerKey, boolean readOnly) {
+        List<UuidMapping> found = new ArrayList<UuidMapping>();
+        Set<String> wanted = externalIds instanceof Set ? (Set<String>) externalIds : new HashSet<String>(externalIds);
+        Set<Integer> hashes = new LinkedHashSet<Integer>();
+        for (String externalId : externalIds) {
+            hashes.add(externalId.hashCode());
+        }
+        for (List<Integer> chunk : partition(hashes)) {
+            List<?> list = session
+                    .createQuery("from UuidMapping where providerKey=:providerKey and externalIdHash in (:hashes)")
+                    .setString("providerKey", providerKey).setParameterList("hashes", chunk).setReadOnly(readOnly).list();
+            for (Object o : list) {
+                UuidMapping mapping = (UuidMapping) o;
+                if (wanted.contains(mapping.getExternalId())) {
+                    found.add(mapping);
                 }
             }
         }
+        return found;
+    }
 
-        return uuid;
+    /**
+     * Returns the external IDs which are not descendants of another one of the list, as their descendants are
+     * already matched by the ones of their ancestor.
+     */
+    private static List<String> getRoots(List<String> externalIds) {
+        List<String> sorted = new ArrayList<String>(new TreeSet<String>(externalIds));
+        List<String> roots = new ArrayList<String>();
+        String root = null;
+        for (String externalId : sorted) {
+            if (root == null || !externalId.startsWith(root + "/")) {
+                roots.add(externalId);
+                root = externalId;
+            }
+        }
+        return roots;
+    }
+
+    private static <T> List<List<T>> partition(Collection<T> values) {
+        return partition(values, BATCH_SIZE);
+    }
+
+    private static <T> List<List<T>> partition(Collection<T> values, int size) {
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        List<T> chunk = null;
+        for (T value : values) {
+            if (chunk == null || chunk.size() == size) {
+                chunk = new ArrayList<T>(Math.min(size, values.size()));
+                chunks.add(chunk);
+            }
+            chunk.add(value);
+        }
+        return chunks;
+    }
+
+    private String generateInternalIdentifier(String providerId) {
+        return providerId + "-" + StringUtils.substringAfter(UUID.randomUUID().toString(), "-");
+    }
+
+    /**
+     * Returns the cached {externalId, internalId} pair for the specified external ID or null if it is not cached or if
+     * the cached entry belongs to another external ID with the same hash code.
+     */
+    private String[] getFromCache(String externalId, String providerKey) {
+        Element element = getIdentifierCache().get(getCacheKey(externalId.hashCode(), providerKey));
+        if (element != null && element.getObjectValue() instanceof String[]) {
+            String[] value = (String[]) element.getObjectValue();
+            if (externalId.equals(value[0])) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the mapping of the specified external ID. An unmapped ID (null internal ID) is only cached for
+     * {@link #UNMAPPED_TIME_TO_LIVE} seconds, as creating its mapping on another cluster node does not invalidate the
+     * entry here.
+     */
+    private void putInCache(String externalId, String internalId, String providerKey) {
+        String cacheKey = getCacheKey(externalId.hashCode(), providerKey);
+        String[] value = new String[] { externalId, internalId };
+        if (internalId != null) {
+            getIdentifierCache().put(new Element(cacheKey, value, true));
+        } else {
+            getIdentifierCache().put(new Element(cacheKey, value, false, 0, UNMAPPED_TIME_TO_LIVE));
+        }
     }
 
     @Override
@@ -257,7 +546,7 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
         UuidMapping uuidMapping = new UuidMapping();
         uuidMapping.setExternalId(externalId);
         uuidMapping.setProviderKey(providerKey);
-        uuidMapping.setInternalUuid(providerId + "-" + StringUtils.substringAfter(UUID.randomUUID().toString(), "-"));
+        uuidMapping.setInternalUuid(generateInternalIdentifier(providerId));
         org.hibernate.Session session = null;
         Thread currentThread = Thread.currentThread();
         ClassLoader previousClassLoader = currentThread.getContextClassLoader();
@@ -269,7 +558,7 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
             session.getTransaction().commit();
 
             // cache it
-            getIdentifierCache().put(new Element(getCacheKey(externalId.hashCode(), providerKey), uuidMapping.getInternalUuid(), true));
+            putInCache(externalId, uuidMapping.getInternalUuid(), providerKey);
         } catch (Exception e) {
             if (session != null) {
                 session.getTransaction().rollback();
@@ -342,10 +631,13 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
             session.beginTransaction();
             List<?> list = session.createQuery("from UuidMapping where providerKey=:providerKey and externalIdHash=:idHash")
                     .setString("providerKey", providerKey).setLong("idHash", oldExternalId.hashCode()).list();
-            if (list.size() > 0) {
-                for (Object mapping : list) {
-                    ((UuidMapping) mapping).setExternalId(newExternalId);
+            for (Object mapping : list) {
+                UuidMapping m = (UuidMapping) mapping;
+                // ignore the mappings of other nodes colliding on the hash code
+                if (oldExternalId.equals(m.getExternalId())) {
+                    m.setExternalId(newExternalId);
                     invalidate.add(oldExternalId);
+                    invalidate.add(newExternalId);
                 }
             }
             if (includeDescendants) {
@@ -354,6 +646,7 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
                         .setString("providerKey", providerKey).setString("externalId", oldExternalId + "/%").list();
                 for (Object mapping : descendants) {
                     UuidMapping m = (UuidMapping) mapping;
+                    invalidate.add(m.getExternalId());
                     m.setExternalId(newExternalId + StringUtils.substringAfter(m.getExternalId(), oldExternalId));
                     invalidate.add(m.getExternalId());
                 }
@@ -374,6 +667,39 @@ public class ExternalProviderInitializerServiceImpl implements ExternalProviderI
         }
     }
 
+    @Override
+    public void updateExternalIdentifiers(Map<String, String> externalIds, String providerKey) throws RepositoryException {
+        if (externalIds.isEmpty()) {
+            return;
+        }
+        StatelessSession session = null;
+        try {
+            session = getHibernateSessionFactory().openStatelessSession();
+            session.beginTransaction();
+            for (UuidMapping mapping : loadMappings(session, externalIds.keySet(), providerKey, false)) {
+                mapping.setExternalId(externalIds.get(mapping.getExternalId()));
+                // updated through Hibernate for the LOB handling of the external ID, and sent in JDBC batches when
+                // hibernate.jdbc.batch_size is set on the session factory
+                session.update(mapping);
+            }
+            session.getTransaction().commit();
+            for (Map.Entry<String, String> entry : externalIds.entrySet()) {
+                invalidateCache(entry.getKey(), providerKey);
+                invalidateCache(entry.getValue(), providerKey);
+            }
+        } catch (Exception e) {
+            if (session != null) {
+                session.getTransaction().rollback();
+            }
+            throw new RepositoryException("Error updating mappings for " + externalIds.size() + " external nodes [provider: "
+                    + providerKey + "]", e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
     public void setOverridableItemsForLocks(List<String> overridableItemsForLocks) {
         this.overridableItemsForLocks = overridableItemsForLocks;
     }
@@ -0,0 +1,223 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.monitoring;
+
+import org.apache.commons.lang.ClassUtils;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.modules.external.ExternalDataCache;
+import org.jahia.modules.external.ExternalDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per provider metrics of the calls done to the data source: call counts, latency histograms and batch sizes by
+ * method, along with the hit ratio of the provider data cache.
+ * <p>
+ * Calls are recorded by the instrumented data source returned by {@link #instrument(ExternalDataSource)}, which the
+ * provider hands to its repository instead of the raw data source when metrics are enabled. The metrics are
+ * published in JMX under <code>org.jahia.modules.external:type=DataSourceMetrics,provider=&lt;key&gt;</code>.
+ *
+ * @see ExternalContentStoreProvider#setMetricsEnabled(boolean)
+ */
+public class DataSourceMetrics implements DataSourceMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceMetrics.class);
+
+    private static final String DOMAIN = "org.jahia.modules.external";
+
+    private final ExternalContentStoreProvider provider;
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+    private ObjectName objectName;
+
+    public DataSourceMetrics(ExternalContentStoreProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Wraps the data source in a proxy implementing the same public interfaces, recording every call done through it.
+     * Interfaces which are not visible from the class loader of the data source are left out, and the data source is
+     * returned as is if the proxy cannot be created.
+     *
+     * @param dataSource the data source to monitor
+     * @return the instrumented data source, or the data source itself if it cannot be instrumented
+     */
+    @SuppressWarnings("unchecked")
+    public ExternalDataSource instrument(ExternalDataSource dataSource) {
+        ClassLoader classLoader = dataSource.getClass().getClassLoader();
+        List<Class<?>> interfaces = new ArrayList<Class<?>>();
+        for (Class<?> type : (List<Class<?>>) ClassUtils.getAllInterfaces(dataSource.getClass())) {
+            if (Modifier.isPublic(type.getModifiers()) && isVisible(type, classLoader)) {
+                interfaces.add(type);
+            } else {
+                logger.debug("Interface {} of {} is not instrumented", type.getName(), dataSource.getClass().getName());
+            }
+        }
+        if (!interfaces.contains(ExternalDataSource.class)) {
+            logger.warn("Unable to instrument the data source of provider {}, metrics are disabled", provider.getKey());
+            return dataSource;
+        }
+        try {
+            return (ExternalDataSource) Proxy.newProxyInstance(classLoader,
+                    interfaces.toArray(new Class<?>[interfaces.size()]), new InstrumentedDataSourceHandler(dataSource, this));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unable to instrument the data source of provider " + provider.getKey() + ", metrics are disabled", e);
+            return dataSource;
+        }
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader classLoader) {
+        try {
+            return Class.forName(type.getName(), false, classLoader) == type;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Publishes the metrics in the platform MBean server. Failures are logged, as metrics are not worth failing the
+     * provider start.
+     */
+    public synchronized void register() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=DataSourceMetrics,provider=" + ObjectName.quote(provider.getKey()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warn("Unable to register the data source metrics of provider " + provider.getKey() + " in JMX", e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Unable to unregister " + objectName, e);
+        }
+        objectName = null;
+    }
+
+    void record(String method, long nanos, boolean failed, int batchSize) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            metrics = new MethodMetrics(method);
+            MethodMetrics existing = methods.putIfAbsent(method, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        metrics.record(nanos, failed, batchSize);
+    }
+
+    @Override
+    public String getProviderKey() {
+        return provider.getKey();
+    }
+
+    @Override
+    public List<MethodStatistics> getMethodStatistics() {
+        Map<String, MethodMetrics> sorted = new TreeMap<String, MethodMetrics>(methods);
+        List<MethodStatistics> result = new ArrayList<MethodStatistics>(sorted.size());
+        for (MethodMetrics metrics : sorted.values()) {
+            result.add(metrics.snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public long getTotalCalls() {
+        long total = 0;
+        for (MethodMetrics metrics : methods.values()) {
+            total += metrics.getCalls();
+        }
+        return total;
+    }
+
+    @Override
+    public double getDataCacheHitRatio() {
+        ExternalDataCache dataCache = provider.getDataCache();
+        return dataCache != null ? dataCache.getHitRatio() : -1;
+    }
+
+    @Override
+    public long getDataCacheHits() {
+        ExternalDataCache dataCache = provider.getDataCache();
+        return dataCache != null ? dataCache.getHitCount() : 0;
+    }
+
+    @Override
+    public long getDataCacheMisses() {
+        ExternalDataCache dataCache = provider.getDataCache();
+        return dataCache != null ? dataCache.getMissCount() : 0;
+    }
+
+    @Override
+    public void reset() {
+        methods.clear();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.monitoring;
+
+import java.util.List;
+
+/**
+ * JMX view of the calls done by an external provider to its data source.
+ *
+ * @see DataSourceMetrics
+ */
+public interface DataSourceMetricsMXBean {
+
+    /**
+     * @return the key of the monitored provider
+     */
+    String getProviderKey();
+
+    /**
+     * @return the statistics of every data source method called so far, sorted by method name
+     */
+    List<MethodStatistics> getMethodStatistics();
+
+    /**
+     * @return the total number of calls done to the data source
+     */
+    long getTotalCalls();
+
+    /**
+     * @return the hit ratio of the provider data cache, or -1 if the data cache is not enabled
+     */
+    double getDataCacheHitRatio();
+
+    long getDataCacheHits();
+
+    long getDataCacheMisses();
+
+    /**
+     * Clears the method statistics. The data cache counters are not affected.
+     */
+    void reset();
+}
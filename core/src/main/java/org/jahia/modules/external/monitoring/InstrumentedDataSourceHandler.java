@@ -0,0 +1,114 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.monitoring;
+
+import org.jahia.modules.external.ExternalChangeSet;
+import org.jahia.modules.external.ExternalDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Invocation handler of the instrumented data sources: forwards the calls to the data source and records their
+ * duration, outcome and batch size.
+ */
+class InstrumentedDataSourceHandler implements InvocationHandler {
+
+    private final ExternalDataSource dataSource;
+
+    private final DataSourceMetrics metrics;
+
+    InstrumentedDataSourceHandler(ExternalDataSource dataSource, DataSourceMetrics metrics) {
+        this.dataSource = dataSource;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            }
+            return method.invoke(dataSource, args);
+        }
+
+        boolean failed = true;
+        Object result = null;
+        long start = System.nanoTime();
+        try {
+            result = method.invoke(dataSource, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            metrics.record(method.getName(), System.nanoTime() - start, failed, getBatchSize(method, args, result));
+        }
+    }
+
+    /**
+     * @return the number of items passed to the method, or loaded by it for the children batches, -1 if the method
+     * does not work on a batch of items
+     */
+    private static int getBatchSize(Method method, Object[] args, Object result) {
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof ExternalChangeSet) {
+                    ExternalChangeSet changeSet = (ExternalChangeSet) arg;
+                    return changeSet.getSavedItems().size() + changeSet.getRemovedPaths().size()
+                            + changeSet.getOrderedChildren().size();
+                } else if (arg instanceof Collection && !"order".equals(method.getName())) {
+                    return ((Collection<?>) arg).size();
+                }
+            }
+        }
+        if (method.getDeclaringClass() == ExternalDataSource.CanLoadChildrenInBatch.class && result instanceof List) {
+            return ((List<?>) result).size();
+        }
+        return -1;
+    }
+}
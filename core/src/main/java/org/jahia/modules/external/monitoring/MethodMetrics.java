@@ -0,0 +1,132 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free accumulator of the calls done to one method of a data source.
+ */
+class MethodMetrics {
+
+    /**
+     * Upper bounds, in microseconds, of the latency histogram buckets. A last bucket holds the slower calls.
+     */
+    static final long[] LATENCY_BOUNDS = {100, 500, 1000, 5000, 10000, 50000, 100000, 500000, 1000000, 5000000};
+
+    private final String method;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BOUNDS.length + 1);
+
+    private final AtomicLong batchCalls = new AtomicLong();
+    private final AtomicLong batchItems = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    MethodMetrics(String method) {
+        this.method = method;
+    }
+
+    /**
+     * @param nanos     duration of the call
+     * @param failed    <code>true</code> if the call threw an exception
+     * @param batchSize number of items handled by the call, or -1 if the method does not work on a batch
+     */
+    void record(long nanos, boolean failed, int batchSize) {
+        calls.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        totalTime.addAndGet(nanos);
+        updateMax(maxTime, nanos);
+        latencies.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+
+        if (batchSize >= 0) {
+            batchCalls.incrementAndGet();
+            batchItems.addAndGet(batchSize);
+            updateMax(maxBatchSize, batchSize);
+        }
+    }
+
+    long getCalls() {
+        return calls.get();
+    }
+
+    MethodStatistics snapshot() {
+        long[] histogram = new long[latencies.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        long callCount = calls.get();
+        long batchCount = batchCalls.get();
+        return new MethodStatistics(method, callCount, errors.get(),
+                callCount > 0 ? toMillis(totalTime.get()) / callCount : 0, toMillis(maxTime.get()),
+                histogram, batchCount, batchCount > 0 ? (double) batchItems.get() / batchCount : 0, maxBatchSize.get());
+    }
+
+    private static int getBucket(long micros) {
+        for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+            if (micros < LATENCY_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BOUNDS.length;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000d;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.monitoring;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the calls done to one method of a data source, since the provider started or the metrics were reset.
+ */
+public class MethodStatistics implements Serializable {
+
+    private static final long serialVersionUID = 6475839362745823071L;
+
+    private final String method;
+    private final long calls;
+    private final long errors;
+    private final double averageTime;
+    private final double maxTime;
+    private final long[] histogram;
+    private final long batchCalls;
+    private final double averageBatchSize;
+    private final long maxBatchSize;
+
+    MethodStatistics(String method, long calls, long errors, double averageTime, double maxTime, long[] histogram,
+                     long batchCalls, double averageBatchSize, long maxBatchSize) {
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.averageTime = averageTime;
+        this.maxTime = maxTime;
+        this.histogram = histogram;
+        this.batchCalls = batchCalls;
+        this.averageBatchSize = averageBatchSize;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return the name of the data source method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the number of calls that threw an exception
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the average duration of the calls, in milliseconds
+     */
+    public double getAverageTime() {
+        return averageTime;
+    }
+
+    /**
+     * @return the duration of the slowest call, in milliseconds
+     */
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return the number of calls by latency range, from the fastest to the slowest range
+     */
+    public Map<String, Long> getLatencyHistogram() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < histogram.length; i++) {
+            String label = i < MethodMetrics.LATENCY_BOUNDS.length ? "<" + formatMicros(MethodMetrics.LATENCY_BOUNDS[i])
+                    : ">=" + formatMicros(MethodMetrics.LATENCY_BOUNDS[i - 1]);
+            result.put(label, histogram[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of calls working on a list of items, like {@link org.jahia.modules.external.ExternalDataSource.CanLoadItemsInBatch}
+     */
+    public long getBatchCalls() {
+        return batchCalls;
+    }
+
+    /**
+     * @return the average number of items handled by the batch calls
+     */
+    public double getAverageBatchSize() {
+        return averageBatchSize;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros >= 1000000) {
+            return micros / 1000000 + "s";
+        } else if (micros >= 1000) {
+            return micros / 1000 + "ms";
+        }
+        return micros + "us";
+    }
+}
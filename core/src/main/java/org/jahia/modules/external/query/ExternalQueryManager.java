@@ -49,6 +49,7 @@ import org.apache.jackrabbit.commons.query.sql2.Parser;
 import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
 import org.apache.jackrabbit.spi.commons.query.qom.QueryObjectModelFactoryImpl;
 import org.apache.jackrabbit.spi.commons.query.qom.QueryObjectModelTree;
+import org.jahia.exceptions.JahiaRuntimeException;
 import org.jahia.modules.external.*;
 import org.jahia.services.content.nodetypes.ExtendedNodeType;
 import org.jahia.services.content.nodetypes.NodeTypeRegistry;
@@ -61,6 +62,8 @@ import javax.jcr.query.*;
 import javax.jcr.query.qom.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -167,9 +170,22 @@ public class ExternalQueryManager implements QueryManager {
 
         @Override
         public QueryResult execute() throws InvalidQueryException, RepositoryException {
-            List<String> allExtendedResults = new ArrayList<>();
-            List<String> results = null;
+            if (hasExtension && isCount()) {
+                // Counting is only done in the extension
+                return createExtensionQuery().execute();
+            }
+            return new ExternalQueryResult(this, openCursor(), workspace);
+        }
+
+        /**
+         * Runs the query and returns a cursor over the matching paths, merging the results of the extension and of the
+         * data source in one pass. Only the extension results are collected in memory, the data source results are
+         * read lazily.
+         */
+        ExternalQueryCursor openCursor() throws RepositoryException {
             final ExternalSessionImpl session = workspace.getSession();
+            List<String> extendedResults = null;
+            Set<String> allExtendedResults = null;
 
             boolean noConstraints = false;
             try {
@@ -182,161 +198,155 @@ public class ExternalQueryManager implements QueryManager {
             }
 
             if (hasExtension) {
-                Session extSession = session.getExtensionSession();
-                QueryManager queryManager = extSession.getWorkspace().getQueryManager();
-
-                final QueryObjectModelFactory qomFactory = queryManager.getQOMFactory();
-
-                Source source = getSource();
-                boolean isMixinOrFacet = false;
-                boolean isCount = false;
-                String selectorType = null;
-                String selectorName = null;
-                if (source instanceof Selector) {
-                    selectorType = ((Selector) source).getNodeTypeName();
-                    selectorName = ((Selector) source).getSelectorName();
-                    isMixinOrFacet = NodeTypeRegistry.getInstance().getNodeType(selectorType).isMixin();
-                    for (Column c : getColumns()) {
-                        final String columnName = c.getColumnName();
-                        if (StringUtils.startsWith(columnName, "rep:facet(")) {
-                            isMixinOrFacet = true;
-                            break;
-                        }
-                        if (StringUtils.startsWith(columnName, "rep:count(")) {
-                            isCount = true;
+                String mountPoint = session.getRepository().getStoreProvider().getMountPoint();
+                NodeIterator nodes = new QueryResultAdapter(createExtensionQuery().execute()).getNodes();
+                if (!nodeTypeSupported) {
+                    // Query is only done in JCR, limit and offset are already applied
+                    return new NodeIteratorQueryCursor(nodes, mountPoint.length());
+                }
+
+                // Need to get all results to prepare merge
+                allExtendedResults = new LinkedHashSet<String>();
+                while (nodes.hasNext()) {
+                    Node node = (Node) nodes.next();
+                    String path = node.getPath().substring(mountPoint.length());
+                    // If no constraint was set, only take extended nodes, as the datasource will return them all anyway
+                    if (!node.isNodeType("jnt:externalProviderExtension") || (!noConstraints && session.itemExists(path))) {
+                        allExtendedResults.add(path);
+                        if (getLimit() > -1 && allExtendedResults.size() > getOffset() + getLimit()) {
                             break;
                         }
                     }
-                    // for extension node,but not mixin , change the type to jnt:externalProviderExtension
-                    String selector = isMixinOrFacet ? selectorType : "jmix:externalProviderExtension";
-                    source = qomFactory.selector(selector, selectorName);
                 }
-
-                final ExternalContentStoreProvider storeProvider = session.getRepository().getStoreProvider();
-                String mountPoint = storeProvider.getMountPoint();
-                Constraint convertedConstraint = convertExistingPathConstraints(getConstraint(), mountPoint, qomFactory);
-                if (!hasDescendantNode(convertedConstraint)) {
-                    // Multiple IsDescendantNode queries are not supported
-                    convertedConstraint = addPathConstraints(convertedConstraint, source, mountPoint, qomFactory);
+                if (!allExtendedResults.isEmpty()) {
+                    // Strip results to limit and offset
+                    List<String> all = new ArrayList<String>(allExtendedResults);
+                    int from = (int) Math.min(getOffset(), all.size());
+                    int to = getLimit() > -1 ? (int) Math.min(getOffset() + getLimit(), all.size()) : all.size();
+                    extendedResults = all.subList(from, to);
                 }
+            }
+            if (!nodeTypeSupported) {
+                return new ListQueryCursor(Collections.<String>emptyList());
+            }
 
-                if (!isMixinOrFacet && selectorName != null && selectorType != null) {
-                    Comparison c = qomFactory.comparison(qomFactory.propertyValue(selectorName, "j:extendedType"), QueryObjectModelConstants.JCR_OPERATOR_EQUAL_TO, qomFactory.literal(extSession.getValueFactory().createValue(selectorType)));
-                    convertedConstraint = qomFactory.and(c, convertedConstraint);
+            ExternalDataSource dataSource = session.getRepository().getDataSource();
+            if (extendedResults == null) {
+                // No previous results, no merge to do
+                ExternalQueryCursor cursor = search(dataSource, getOffset(), getLimit());
+                return cursor != null ? cursor : new ListQueryCursor(Collections.<String>emptyList());
+            }
+            if (getLimit() > -1 && extendedResults.size() >= getLimit()) {
+                // Limit already reached with extended nodes
+                return new ListQueryCursor(extendedResults);
+            }
+            if (noConstraints) {
+                // Previous results, but only in extended nodes, no merge required - concat only
+                long offset = Math.max(0, getOffset() - allExtendedResults.size());
+                long limit = getLimit() > -1 ? getLimit() - extendedResults.size() : -1;
+                return new MergingQueryCursor(extendedResults, search(dataSource, offset, limit), null, 0, getLimit());
+            }
+            // Need to merge, move offset to 0. Extend limit with total size of extended result to skip duplicate results
+            long limit = getLimit() > -1 ? getOffset() + getLimit() : -1;
+            long skips = Math.max(0, getOffset() - allExtendedResults.size());
+            return new MergingQueryCursor(extendedResults, search(dataSource, 0, limit), allExtendedResults, skips,
+                    getLimit());
+        }
+
+        /**
+         * Calls the data source with a copy of this query using the specified window, so that this query is never
+         * modified and can be executed again.
+         *
+         * @return the cursor over the data source results or null if the query is not supported by the data source
+         */
+        private ExternalQueryCursor search(ExternalDataSource dataSource, long offset, long limit) throws RepositoryException {
+            ExternalQuery query = new ExternalQuery(getSource(), getConstraint(), getOrderings(), getColumns());
+            query.setOffset(offset);
+            if (limit > -1) {
+                query.setLimit(limit);
+            }
+            ExternalContentStoreProvider.setCurrentSession(workspace.getSession());
+            try {
+                if (dataSource instanceof ExternalDataSource.StreamingSearchable) {
+                    return ((ExternalDataSource.StreamingSearchable) dataSource).searchCursor(query);
                 }
+                return new ListQueryCursor(((ExternalDataSource.Searchable) dataSource).search(query));
+            } catch (UnsupportedRepositoryOperationException e) {
+                logger.debug("Unsupported query ", e);
+                return null;
+            } finally {
+                ExternalContentStoreProvider.removeCurrentSession();
+            }
+        }
 
-                Query q = qomFactory.createQuery(source, convertedConstraint, getOrderings(), getColumns());
-                if (!nodeTypeSupported) {
-                    // Query is only done in JCR, directly pass limit and offset
-                    if (getLimit() > -1) {
-                        q.setLimit(getLimit());
-                    }
-                    q.setOffset(getOffset());
+        private boolean isCount() {
+            if (!(getSource() instanceof Selector)) {
+                return false;
+            }
+            for (Column c : getColumns()) {
+                final String columnName = c.getColumnName();
+                if (StringUtils.startsWith(columnName, "rep:facet(")) {
+                    return false;
+                }
+                if (StringUtils.startsWith(columnName, "rep:count(")) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
+        private Query createExtensionQuery() throws RepositoryException {
+            final ExternalSessionImpl session = workspace.getSession();
+            Session extSession = session.getExtensionSession();
+            QueryManager queryManager = extSession.getWorkspace().getQueryManager();
 
-                    final QueryResult result = q.execute();
-                    if (!isCount) {
-                        NodeIterator nodes = new QueryResultAdapter(result).getNodes();
-                        while (nodes.hasNext()) {
-                            Node node = (Node) nodes.next();
-                            allExtendedResults.add(node.getPath().substring(mountPoint.length()));
-                        }
-                        results = allExtendedResults;
-                    } else {
-                        return result;
-                    }
+            final QueryObjectModelFactory qomFactory = queryManager.getQOMFactory();
 
-                } else {
-                    // Need to get all results to prepare merge
-                    final QueryResult queryResult = q.execute();
-                    if (!isCount) {
-                        NodeIterator nodes = new QueryResultAdapter(queryResult).getNodes();
-                        while (nodes.hasNext()) {
-                            Node node = (Node) nodes.next();
-                            String path = node.getPath().substring(mountPoint.length());
-                            // If no constraint was set, only take extended nodes, as the datasource will return them all anyway
-                            if (!node.isNodeType("jnt:externalProviderExtension") || (!noConstraints && session.itemExists(path))) {
-                                allExtendedResults.add(path);
-                                if (getLimit() > -1 && allExtendedResults.size() > getOffset() + getLimit()) {
-                                    break;
-                                }
-                            }
-                        }
-                    } else {
-                        return queryResult;
+            Source source = getSource();
+            boolean isMixinOrFacet = false;
+            String selectorType = null;
+            String selectorName = null;
+            if (source instanceof Selector) {
+                selectorType = ((Selector) source).getNodeTypeName();
+                selectorName = ((Selector) source).getSelectorName();
+                isMixinOrFacet = NodeTypeRegistry.getInstance().getNodeType(selectorType).isMixin();
+                for (Column c : getColumns()) {
+                    final String columnName = c.getColumnName();
+                    if (StringUtils.startsWith(columnName, "rep:facet(")) {
+                        isMixinOrFacet = true;
+                        break;
                     }
-
-                    if (allExtendedResults.size() == 0) {
-                        // No results at all, ignore search in extension
-                        results = null;
-                    } else if (getOffset() >= allExtendedResults.size()) {
-                        // Offset greater than results here - return an empty result list, still need to merge results
-                        results = new ArrayList<String>();
-                    } else if (getLimit() > -1) {
-                        // Strip results to limit and offset
-                        results = allExtendedResults.subList((int) getOffset(), Math.min((int) getLimit(), allExtendedResults.size()));
-                    } else if (getOffset() > 0) {
-                        // Use offset
-                        results = allExtendedResults.subList((int) getOffset(), allExtendedResults.size());
-                    } else {
-                        // Retuen all results
-                        results = allExtendedResults;
+                    if (StringUtils.startsWith(columnName, "rep:count(")) {
+                        break;
                     }
                 }
+                // for extension node,but not mixin , change the type to jnt:externalProviderExtension
+                String selector = isMixinOrFacet ? selectorType : "jmix:externalProviderExtension";
+                source = qomFactory.selector(selector, selectorName);
             }
-            if (nodeTypeSupported && (getLimit() == -1 || results == null || results.size() < getLimit())) {
-                ExternalContentStoreProvider.setCurrentSession(session);
-                try {
-                    ExternalDataSource dataSource = session.getRepository().getDataSource();
-                    final long originalLimit = getLimit();
-
-                    if (results == null) {
-                        // No previous results, no merge to do
-                        results = ((ExternalDataSource.Searchable) dataSource).search(this);
-                    } else if (noConstraints) {
-                        // Previous results, but only in extended nodes, no merge required - concat only
-                        if (getOffset() >= allExtendedResults.size()) {
-                            setOffset(getOffset() - allExtendedResults.size());
-                        } else {
-                            setOffset(0);
-                            if (getLimit() != -1) {
-                                setLimit(getLimit() - results.size());
-                            }
-                        }
-                        results.addAll(((ExternalDataSource.Searchable) dataSource).search(this));
-                    } else {
-                        if (originalLimit > -1) {
-                            // Remove results found. Extend limit with total size of extended result to skip duplicate results
-                            setLimit(getOffset() + getLimit());
-                        }
-                        // Need to merge, move offset to 0
-                        int skips = Math.max(0, (int) getOffset() - allExtendedResults.size());
-                        setOffset(0);
-                        List<String> providerResult = ((ExternalDataSource.Searchable) dataSource).search(this);
-                        for (String s : providerResult) {
-                            // Skip duplicate result
-                            if (!allExtendedResults.contains(s)) {
-                                if (skips > 0) {
-                                    skips--;
-                                } else {
-                                    results.add(s);
-                                    if (originalLimit > -1 && results.size() >= originalLimit) {
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                } catch (UnsupportedRepositoryOperationException e) {
-                    logger.debug("Unsupported query ", e);
-                } finally {
-                    ExternalContentStoreProvider.removeCurrentSession();
-                }
+
+            final ExternalContentStoreProvider storeProvider = session.getRepository().getStoreProvider();
+            String mountPoint = storeProvider.getMountPoint();
+            Constraint convertedConstraint = convertExistingPathConstraints(getConstraint(), mountPoint, qomFactory);
+            if (!hasDescendantNode(convertedConstraint)) {
+                // Multiple IsDescendantNode queries are not supported
+                convertedConstraint = addPathConstraints(convertedConstraint, source, mountPoint, qomFactory);
             }
-            if (results == null) {
-                results = new ArrayList<String>();
+
+            if (!isMixinOrFacet && selectorName != null && selectorType != null) {
+                Comparison c = qomFactory.comparison(qomFactory.propertyValue(selectorName, "j:extendedType"), QueryObjectModelConstants.JCR_OPERATOR_EQUAL_TO, qomFactory.literal(extSession.getValueFactory().createValue(selectorType)));
+                convertedConstraint = qomFactory.and(c, convertedConstraint);
             }
-            return new ExternalQueryResult(this, results, workspace);
+
+            Query q = qomFactory.createQuery(source, convertedConstraint, getOrderings(), getColumns());
+            if (!nodeTypeSupported) {
+                // Query is only done in JCR, directly pass limit and offset
+                if (getLimit() > -1) {
+                    q.setLimit(getLimit());
+                }
+                q.setOffset(getOffset());
+            }
+            return q;
         }
 
         private boolean hasDescendantNode(Constraint convertedConstraint) {
@@ -388,6 +398,48 @@ public class ExternalQueryManager implements QueryManager {
         }
 
 
+        /**
+         * Cursor over the nodes returned by the extension query, reading their paths relative to the mount point lazily.
+         */
+        private class NodeIteratorQueryCursor implements ExternalQueryCursor {
+            private final NodeIterator nodes;
+            private final int mountPointLength;
+
+            NodeIteratorQueryCursor(NodeIterator nodes, int mountPointLength) {
+                this.nodes = nodes;
+                this.mountPointLength = mountPointLength;
+            }
+
+            @Override
+            public long getSize() {
+                return nodes.getSize();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public String next() {
+                try {
+                    return nodes.nextNode().getPath().substring(mountPointLength);
+                } catch (RepositoryException e) {
+                    throw new JahiaRuntimeException("Unable to read the path of the next node", e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+
         private class QueryResultAdapter implements QueryResult {
             private final QueryResult result;
 
@@ -417,7 +469,7 @@ public class ExternalQueryManager implements QueryManager {
                             try {
                                 return row.getNode(result.getSelectorNames()[0]);
                             } catch (RepositoryException e) {
-                                throw new UnsupportedOperationException("Unable to access the node in " + row, e);
+                                throw new JahiaRuntimeException("Unable to access the node in " + row, e);
                             }
                         }
                     };
@@ -43,19 +43,22 @@
  */
 package org.jahia.modules.external.query;
 
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.jcr.*;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
 import javax.jcr.query.qom.Column;
-import javax.jcr.query.qom.QueryObjectModel;
 import javax.jcr.query.qom.Selector;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.modules.external.ExternalQueryCursor;
+import org.jahia.modules.external.ExternalSessionImpl;
 import org.jahia.modules.external.ExternalWorkspaceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,11 +72,17 @@ class ExternalQueryResult implements QueryResult {
 
     private static final Logger logger = LoggerFactory.getLogger(ExternalQueryResult.class);
 
+    // number of result paths read from the cursor and loaded as nodes at once
+    private static final int PAGE_SIZE = 100;
+
     private String[] columns;
 
-    private QueryObjectModel qom;
+    private ExternalQueryManager.ExecutableExternalQuery qom;
+
+    private ExternalQueryCursor cursor;
 
-    private List<String> results;
+    // cursor of the last iterator, closed when a new iteration starts
+    private ExternalQueryCursor lastCursor;
 
     private String[] selectors;
 
@@ -84,15 +93,16 @@ class ExternalQueryResult implements QueryResult {
      *
      * @param qom
      *            the query object modules used for the search
-     * @param results
-     *            the list of result IDs matching the search criteria
+     * @param cursor
+     *            the cursor over the paths matching the search criteria
      * @param workspace
      *            the current provider workspace
      */
-    ExternalQueryResult(QueryObjectModel qom, List<String> results, ExternalWorkspaceImpl workspace) {
+    ExternalQueryResult(ExternalQueryManager.ExecutableExternalQuery qom, ExternalQueryCursor cursor,
+            ExternalWorkspaceImpl workspace) {
         super();
         this.qom = qom;
-        this.results = results;
+        this.cursor = cursor;
         this.workspace = workspace;
     }
 
@@ -117,14 +127,12 @@ class ExternalQueryResult implements QueryResult {
 
     @Override
     public NodeIterator getNodes() throws RepositoryException {
-        final Iterator<String> it = results.iterator();
-        return new ExternalQueryNodeIterator(it);
+        return new ExternalQueryNodeIterator(takeCursor());
     }
 
     @Override
     public RowIterator getRows() throws RepositoryException {
-        final Iterator<String> it = results.iterator();
-        return new ExternalQueryRowIterator(it);
+        return new ExternalQueryRowIterator(takeCursor());
     }
 
     @Override
@@ -140,80 +148,135 @@ class ExternalQueryResult implements QueryResult {
         return selectors;
     }
 
-    private class ExternalQueryNodeIterator implements NodeIterator {
-        private final Iterator<String> it;
-        private int pos;
+    /**
+     * Returns the cursor obtained at execution time for the first iteration, then executes the query again for each
+     * new iteration, as the results are not kept in memory. Starting a new iteration closes the cursor of the previous
+     * one, which must not be used anymore.
+     */
+    private ExternalQueryCursor takeCursor() throws RepositoryException {
+        ExternalQueryCursor c = cursor;
+        cursor = null;
+        if (c == null) {
+            if (lastCursor != null) {
+                lastCursor.close();
+            }
+            c = qom.openCursor();
+        }
+        lastCursor = c;
+        return c;
+    }
 
-        public ExternalQueryNodeIterator(Iterator<String> it) {
-            this.it = it;
-            pos = 0;
+    /**
+     * Base iterator reading the cursor by pages and loading the nodes of each page at once in the session.
+     */
+    private abstract class PagedIterator {
+        private final ExternalQueryCursor cursor;
+        private final List<String> page = new ArrayList<String>(PAGE_SIZE);
+        private int pageIndex;
+        private long pos;
+        private boolean exhausted;
+
+        PagedIterator(ExternalQueryCursor cursor) {
+            this.cursor = cursor;
         }
 
-        @Override
         public long getPosition() {
             return pos;
         }
 
-        @Override
         public long getSize() {
-            return results.size();
+            return cursor.getSize();
         }
 
-        @Override
         public boolean hasNext() {
-            return it.hasNext();
-        }
-
-        @Override
-        public Object next() {
-            return nextNode();
-        }
-
-        @Override
-        public Node nextNode() {
-            try {
-                return workspace.getSession().getNode(it.next());
-            } catch (RepositoryException e) {
-                logger.error(e.getMessage(), e);
-                return null;
+            if (pageIndex < page.size()) {
+                return true;
             }
+            return readPage(true);
         }
 
-        @Override
         public void remove() {
             throw new UnsupportedOperationException();
         }
 
         public void skip(long skipNum) {
-            for (int i = 0; i < skipNum; i++) {
-                it.next();
+            for (long i = 0; i < skipNum; i++) {
+                if (pageIndex >= page.size() && !readPage(false)) {
+                    throw new NoSuchElementException();
+                }
+                pageIndex++;
             }
             pos += skipNum;
         }
+
+        Node nextResultNode() throws RepositoryException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            pos++;
+            return workspace.getSession().getNode(page.get(pageIndex++));
+        }
+
+        private boolean readPage(boolean preload) {
+            page.clear();
+            pageIndex = 0;
+            if (exhausted) {
+                return false;
+            }
+            ExternalSessionImpl session = workspace.getSession();
+            ExternalContentStoreProvider.setCurrentSession(session);
+            try {
+                while (page.size() < PAGE_SIZE && cursor.hasNext()) {
+                    page.add(cursor.next());
+                }
+                if (page.size() < PAGE_SIZE || !cursor.hasNext()) {
+                    // release the cursor as soon as its last path is read, not when the caller asks for one more
+                    exhausted = true;
+                    cursor.close();
+                }
+            } finally {
+                ExternalContentStoreProvider.removeCurrentSession();
+            }
+            if (page.isEmpty()) {
+                return false;
+            }
+            if (preload) {
+                try {
+                    session.preloadNodes(page);
+                } catch (RepositoryException e) {
+                    logger.warn("Unable to preload query result nodes, they will be loaded one by one", e);
+                }
+            }
+            return true;
+        }
     }
 
-    private class ExternalQueryRowIterator implements RowIterator {
-        private final Iterator<String> it;
-        private int pos;
+    private class ExternalQueryNodeIterator extends PagedIterator implements NodeIterator {
 
-        public ExternalQueryRowIterator(Iterator<String> it) {
-            this.it = it;
-            pos = 0;
+        public ExternalQueryNodeIterator(ExternalQueryCursor cursor) {
+            super(cursor);
         }
 
         @Override
-        public long getPosition() {
-            return pos;
+        public Object next() {
+            return nextNode();
         }
 
         @Override
-        public long getSize() {
-            return results.size();
+        public Node nextNode() {
+            try {
+                return nextResultNode();
+            } catch (RepositoryException e) {
+                logger.error(e.getMessage(), e);
+                return null;
+            }
         }
+    }
 
-        @Override
-        public boolean hasNext() {
-            return it.hasNext();
+    private class ExternalQueryRowIterator extends PagedIterator implements RowIterator {
+
+        public ExternalQueryRowIterator(ExternalQueryCursor cursor) {
+            super(cursor);
         }
 
         @Override
@@ -224,7 +287,7 @@ class ExternalQueryResult implements QueryResult {
         @Override
         public Row nextRow() {
             try {
-                final Node n = workspace.getSession().getNode(it.next());
+                final Node n = nextResultNode();
                 return new ExternalQueryRow(n);
             } catch (RepositoryException e) {
                 logger.error(e.getMessage(), e);
@@ -232,18 +295,6 @@ class ExternalQueryResult implements QueryResult {
             }
         }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
-        }
-
-        public void skip(long skipNum) {
-            for (int i = 0; i < skipNum; i++) {
-                it.next();
-            }
-            pos += skipNum;
-        }
-
         private class ExternalQueryRow implements Row {
             private final Node n;
 
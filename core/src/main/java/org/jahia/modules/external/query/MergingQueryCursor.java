@@ -0,0 +1,185 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.query;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.jahia.modules.external.ExternalQueryCursor;
+
+/**
+ * Cursor merging in one pass the results found in the extension JCR with the ones returned by the data source: the
+ * extension paths come first, then the data source paths which are not part of the excluded set, after skipping the
+ * specified number of them, until the limit is reached.
+ */
+class MergingQueryCursor implements ExternalQueryCursor {
+
+    private final List<String> first;
+
+    private final Iterator<String> firstIterator;
+
+    private final ExternalQueryCursor second;
+
+    private final Set<String> excluded;
+
+    private final long skip;
+
+    private final long limit;
+
+    private long skipped;
+
+    private long count;
+
+    private String next;
+
+    private boolean closed;
+
+    /**
+     * Initializes an instance of this class.
+     *
+     * @param first
+     *            the paths found in the extension, already restricted to the requested window
+     * @param second
+     *            the data source cursor, or null if the data source does not need to be queried
+     * @param excluded
+     *            the paths to ignore in the data source cursor, or null if no duplicate can occur
+     * @param skip
+     *            the number of data source paths to skip, once the excluded ones are removed
+     * @param limit
+     *            the maximum number of paths to return, or -1 for no limit
+     */
+    MergingQueryCursor(List<String> first, ExternalQueryCursor second, Set<String> excluded, long skip, long limit) {
+        this.first = first;
+        this.firstIterator = first.iterator();
+        this.second = second;
+        this.excluded = excluded;
+        this.skip = skip;
+        this.limit = limit;
+    }
+
+    @Override
+    public long getSize() {
+        long size;
+        if (second == null) {
+            size = first.size();
+        } else if (second instanceof ListQueryCursor) {
+            // all data source results are in memory anyway, count them exactly
+            long remaining = 0;
+            for (String path : ((ListQueryCursor) second).getPaths()) {
+                if (excluded == null || !excluded.contains(path)) {
+                    remaining++;
+                }
+            }
+            size = first.size() + Math.max(0, remaining - skip);
+        } else if (excluded == null && second.getSize() > -1) {
+            size = first.size() + Math.max(0, second.getSize() - skip);
+        } else {
+            return -1;
+        }
+        return limit > -1 ? Math.min(limit, size) : size;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (second != null) {
+                second.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = fetch();
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        next = null;
+        count++;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private String fetch() {
+        if (closed) {
+            return null;
+        }
+        if (limit > -1 && count >= limit) {
+            // the data source cursor is not needed anymore, even if it has more results
+            close();
+            return null;
+        }
+        if (firstIterator.hasNext()) {
+            return firstIterator.next();
+        }
+        while (second != null && second.hasNext()) {
+            String path = second.next();
+            if (excluded != null && excluded.contains(path)) {
+                // duplicate of an extension result
+                continue;
+            }
+            if (skipped < skip) {
+                skipped++;
+                continue;
+            }
+            return path;
+        }
+        return null;
+    }
+}
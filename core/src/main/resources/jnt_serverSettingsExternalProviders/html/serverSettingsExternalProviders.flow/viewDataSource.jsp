@@ -54,3 +54,37 @@
         </c:forEach>
     </ul>
 </c:if>
+<c:if test="${not empty datasourceInfo.dataCacheHitRatio or not empty datasourceInfo.methodStatistics}">
+    <h3><fmt:message key="label.metrics"/></h3>
+    <c:if test="${not empty datasourceInfo.dataCacheHitRatio}">
+        <p><fmt:message key="label.dataCacheHitRatio"/> : <fmt:formatNumber value="${datasourceInfo.dataCacheHitRatio}" type="percent" maxFractionDigits="1"/></p>
+    </c:if>
+    <c:if test="${not empty datasourceInfo.methodStatistics}">
+        <table class="table table-bordered table-striped">
+            <thead>
+            <tr>
+                <th><fmt:message key="label.method"/></th>
+                <th><fmt:message key="label.calls"/></th>
+                <th><fmt:message key="label.errors"/></th>
+                <th><fmt:message key="label.averageTime"/></th>
+                <th><fmt:message key="label.maxTime"/></th>
+                <th><fmt:message key="label.averageBatchSize"/></th>
+                <th><fmt:message key="label.latencies"/></th>
+            </tr>
+            </thead>
+            <tbody>
+            <c:forEach items="${datasourceInfo.methodStatistics}" var="stats">
+                <tr>
+                    <td>${stats.method}</td>
+                    <td>${stats.calls}</td>
+                    <td>${stats.errors}</td>
+                    <td><fmt:formatNumber value="${stats.averageTime}" maxFractionDigits="3"/></td>
+                    <td><fmt:formatNumber value="${stats.maxTime}" maxFractionDigits="3"/></td>
+                    <td><c:if test="${stats.batchCalls > 0}"><fmt:formatNumber value="${stats.averageBatchSize}" maxFractionDigits="1"/> (max ${stats.maxBatchSize})</c:if></td>
+                    <td><c:forEach items="${stats.latencyHistogram}" var="entry"><c:if test="${entry.value > 0}">${entry.key} : ${entry.value} </c:if></c:forEach></td>
+                </tr>
+            </c:forEach>
+            </tbody>
+        </table>
+    </c:if>
+</c:if>
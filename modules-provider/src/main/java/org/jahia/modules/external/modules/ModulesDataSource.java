@@ -59,7 +59,9 @@ import org.apache.commons.vfs2.*;
 import org.apache.commons.vfs2.provider.local.LocalFileName;
 import org.jahia.api.Constants;
 import org.jahia.data.templates.JahiaTemplatesPackage;
+import org.jahia.modules.external.ExternalContentStoreProvider;
 import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataCache;
 import org.jahia.modules.external.ExternalDataSource;
 import org.jahia.modules.external.modules.osgi.ModulesSourceHttpServiceTracker;
 import org.jahia.modules.external.modules.osgi.ModulesSourceSpringInitializer;
@@ -104,6 +106,8 @@ import javax.jcr.version.OnParentVersionAction;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Data source provider that is mapped to the /modules filesystem folder with deployed Jahia modules.
@@ -193,8 +197,18 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
 
     private Set<String> supportedNodeTypes;
 
-    private Map<String, NodeTypeRegistry> nodeTypeRegistryMap = new HashMap<>();
-    private Map<NodeTypeRegistry, Map<String,String>> namespaceDefinitions = new HashMap<>();
+    /**
+     * Published registries by CND file path. They are never modified once published: writers work on a fresh copy and
+     * publish it once the file is written, so that readers do not need any lock.
+     */
+    private ConcurrentMap<String, NodeTypeRegistry> nodeTypeRegistryMap = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, Long> nodeTypeRegistryTimestamps = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, Map<String,String>> namespaceDefinitions = new ConcurrentHashMap<>();
+
+    /**
+     * Parsed system and dependency definitions, whose node types are shared by all the file registries.
+     */
+    private volatile NodeTypeRegistry baseRegistry;
 
     private String fileMonitorJobName;
 
@@ -288,6 +302,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
                             logger.error(e.getMessage(), e);
                         }
                     } else if (StringUtils.equals(type, JNT_DEFINITION_FILE)) {
+                        invalidateNodeTypeRegistry("/" + StringUtils.replace(StringUtils.substringAfter(file.getPath(), fullFolderPath), File.separator, "/"), file);
                         try {
                             registerCndFiles(file);
                         } catch (IOException | ParseException | RepositoryException e) {
@@ -396,6 +411,10 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
     protected void invalidateVfsParentCache(String fullFolderPath, File file) {
         String relativePath = StringUtils.substringAfter(file.getPath(), fullFolderPath);
         if (StringUtils.isNotEmpty(relativePath)) {
+            ExternalDataCache dataCache = getDataCache();
+            if (dataCache != null) {
+                dataCache.invalidateTree("/" + StringUtils.replace(relativePath, File.separator, "/"));
+            }
             try {
                 getFile(relativePath).getParent().refresh();
             } catch (FileSystemException e) {
@@ -407,11 +426,22 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         }
     }
 
+    /**
+     * @return the shared data cache of the provider mounting the sources of this module, or <code>null</code> if it is
+     * not mounted or has no cache enabled
+     */
+    private ExternalDataCache getDataCache() {
+        JCRStoreProvider provider = JCRSessionFactory.getInstance().getProviders().get(
+                "module-" + module.getId() + "-" + module.getVersion().toString());
+        return provider instanceof ExternalContentStoreProvider ? ((ExternalContentStoreProvider) provider).getDataCache() : null;
+    }
+
     @Override
     public void stop() {
         if (fileMonitorJobName != null) {
             FileMonitorJob.unschedule(fileMonitorJobName);
         }
+        baseRegistry = null;
     }
 
     /**
@@ -549,10 +579,9 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
      */
     public boolean isNodeType(String name) {
         name = StringUtils.replaceOnce(name, "_", ":");
-        final Set<Map.Entry<String, NodeTypeRegistry>> entries = new HashSet<Map.Entry<String, NodeTypeRegistry>>(nodeTypeRegistryMap.entrySet());
-        for (Map.Entry<String, NodeTypeRegistry> entry : entries) {
+        for (NodeTypeRegistry registry : nodeTypeRegistryMap.values()) {
             try {
-                entry.getValue().getNodeType(name);
+                registry.getNodeType(name);
                 return true;
             } catch (NoSuchNodeTypeException e) {
                 // Continue with next registry
@@ -773,13 +802,13 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         String nodeTypeName = splitPath[0];
         nodeTypeName = nodeTypeName.replace('-', '_');
         if (splitPath.length == 1) {
-            NodeTypeRegistry nodeTypeRegistry = loadRegistry(cndPath);
+            NodeTypeRegistry nodeTypeRegistry = loadRegistryForUpdate(cndPath);
             nodeTypeRegistry.unregisterNodeType(nodeTypeName);
             writeDefinitionFile(nodeTypeRegistry, cndPath);
         } else {
             String itemDefinitionName = splitPath[1];
             try {
-                NodeTypeRegistry nodeTypeRegistry = loadRegistry(cndPath);
+                NodeTypeRegistry nodeTypeRegistry = loadRegistryForUpdate(cndPath);
                 ExtendedNodeType nodeType = nodeTypeRegistry.getNodeType(nodeTypeName);
                 Map<String, ExtendedPropertyDefinition> propertyDefinitionsAsMap = nodeType.getDeclaredPropertyDefinitionsAsMap();
                 if (propertyDefinitionsAsMap.containsKey(itemDefinitionName)) {
@@ -940,7 +969,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
     private void renameNodeTypePropertyOrChildNode(String cndPath, String nodeTypeName, String oldName,
             String newName) throws RepositoryException {
         try {
-            NodeTypeRegistry ntRegistry = loadRegistry(cndPath);
+            NodeTypeRegistry ntRegistry = loadRegistryForUpdate(cndPath);
             ExtendedNodeType nodeType = ntRegistry.getNodeType(nodeTypeName);
             ExtendedItemDefinition childDef = nodeType.getPropertyDefinition(oldName);
             if (childDef == null) {
@@ -967,7 +996,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
     private void renameNodeType(String oldCndPath, String oldNodeTypeName, String newCndPath, String newNodeTypeName)
             throws RepositoryException {
         try {
-            NodeTypeRegistry oldNodeTypeRegistry = loadRegistry(oldCndPath);
+            NodeTypeRegistry oldNodeTypeRegistry = loadRegistryForUpdate(oldCndPath);
             ExtendedNodeType nodeType = oldNodeTypeRegistry.getNodeType(oldNodeTypeName);
 
             ensureCanRenameNodeType(nodeType);
@@ -1005,7 +1034,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
             // rename the node type and register it
             Name name = new Name(newNodeTypeName, oldNodeTypeRegistry.getNamespaces());
             nodeType.setName(name);
-            NodeTypeRegistry newNodeTypeRegistry = loadRegistry(newCndPath);
+            NodeTypeRegistry newNodeTypeRegistry = oldCndPath.equals(newCndPath) ? oldNodeTypeRegistry : loadRegistryForUpdate(newCndPath);
             newNodeTypeRegistry.addNodeType(name, nodeType);
             nodeType.validate();
 
@@ -1124,7 +1153,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
      * @throws PathNotFoundException
      */
     @Override
-    public void order(String path, final List<String> children) throws RepositoryException {
+    public synchronized void order(String path, final List<String> children) throws RepositoryException {
         // Order only for nodeType
         ExternalData data = getItemByPath(path);
         if (!data.getType().equals(JNT_PRIMARY_NODE_TYPE) && !data.getType().equals(JNT_MIXIN_NODE_TYPE)) {
@@ -1136,7 +1165,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         String subPath = getSubPath(path, pathLowerCase);
         String splitPath = StringUtils.substringBefore(subPath, "/");
 
-        NodeTypeRegistry ntr = loadRegistry(cndPath);
+        NodeTypeRegistry ntr = loadRegistryForUpdate(cndPath);
         ExtendedNodeType type = ntr.getNodeType(splitPath);
         Comparator<ExtendedItemDefinition> c = new Comparator<ExtendedItemDefinition>() {
             @Override
@@ -1178,7 +1207,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
     }
 
     @Override
-    public void saveItem(ExternalData data) throws RepositoryException {
+    public synchronized void saveItem(ExternalData data) throws RepositoryException {
         super.saveItem(data);
         boolean hasProperties = false;
         try {
@@ -1242,7 +1271,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
             try {
                 Reader resourceReader = null;
                 try {
-                    NodeTypeRegistry ntr = createBaseRegistry();
+                    NodeTypeRegistry ntr = copyBaseRegistry();
                     resourceReader = new InputStreamReader(new ByteArrayInputStream(sourceCode), Charsets.UTF_8);
                     JahiaCndReader r = new JahiaCndReader(resourceReader, data.getName(), module.getId(), ntr);
                     r.parse();
@@ -1343,7 +1372,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         String subPath = getSubPath(path, pathLowerCase);
         String nodeTypeName = StringUtils.substringBefore(subPath, "/");
         nodeTypeName = nodeTypeName.replace('-', '_');
-        NodeTypeRegistry nodeTypeRegistry = loadRegistry(cndPath);
+        NodeTypeRegistry nodeTypeRegistry = loadRegistryForUpdate(cndPath);
         ExtendedNodeType nodeType = null;
         try {
             nodeType = nodeTypeRegistry.getNodeType(nodeTypeName);
@@ -1499,7 +1528,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         String subPath = getSubPath(path, pathLowerCase);
         String[] splitPath = StringUtils.split(subPath, "/");
 
-        NodeTypeRegistry nodeTypeRegistry = loadRegistry(cndPath);
+        NodeTypeRegistry nodeTypeRegistry = loadRegistryForUpdate(cndPath);
         String nodeTypeName = splitPath[0];
         nodeTypeName = nodeTypeName.replace('-', '_');
         String lastPathSegment = splitPath[1];
@@ -1718,7 +1747,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         String subPath = getSubPath(path, pathLowerCase);
         String[] splitPath = StringUtils.split(subPath, "/");
 
-        NodeTypeRegistry nodeTypeRegistry = loadRegistry(cndPath);
+        NodeTypeRegistry nodeTypeRegistry = loadRegistryForUpdate(cndPath);
 
         String nodeTypeName = splitPath[0];
         nodeTypeName = nodeTypeName.replace('-', '_');
@@ -2073,37 +2102,123 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         return ntr;
     }
 
+    /**
+     * Create a new NodeTypeRegistry containing the node types of the base registry, which is parsed only once. The
+     * base node types are shared and must not be modified: only the definitions of the module itself are.
+     *
+     * @return
+     * @throws IOException
+     * @throws ParseException
+     * @throws RepositoryException
+     */
+    private NodeTypeRegistry copyBaseRegistry() throws IOException, ParseException, RepositoryException {
+        NodeTypeRegistry base = baseRegistry;
+        if (base == null) {
+            // concurrent first calls may parse it twice, which is harmless
+            base = createBaseRegistry();
+            baseRegistry = base;
+        }
+        NodeTypeRegistry ntr = new NodeTypeRegistry();
+        ntr.getNamespaces().putAll(base.getNamespaces());
+        for (ExtendedNodeType nodeType : base.getAllNodeTypes()) {
+            ntr.addNodeType(nodeType.getNameObject(), nodeType);
+        }
+        return ntr;
+    }
+
 
     private void removeNodeTypeRegistry(String newCndPath) {
-        NodeTypeRegistry nodeTypeRegistry = nodeTypeRegistryMap.remove(newCndPath);
-        namespaceDefinitions.remove(nodeTypeRegistry);
+        nodeTypeRegistryMap.remove(newCndPath);
+        nodeTypeRegistryTimestamps.remove(newCndPath);
+        namespaceDefinitions.remove(newCndPath);
+    }
+
+    /**
+     * Drops the published registry of a definition file changed on disk, unless the change was written by this data
+     * source, so that only this file is parsed again on next access.
+     *
+     * @param path the path of the definition file
+     * @param file the changed file
+     */
+    private void invalidateNodeTypeRegistry(String path, File file) {
+        Long timestamp = nodeTypeRegistryTimestamps.get(path);
+        if (timestamp != null && (!file.exists() || timestamp != file.lastModified())) {
+            nodeTypeRegistryMap.remove(path);
+            nodeTypeRegistryTimestamps.remove(path);
+        }
     }
 
     /**
      * Get the local NodeTypeRegistry for one specific file. Contains system definitions, dependencies and
-     * definitions from the current file.
+     * definitions from the current file. The returned registry is shared and must not be modified, use
+     * {@link #loadRegistryForUpdate(String)} to get a registry to modify.
      *
      * @param path
      * @return
      * @throws RepositoryException
      */
-    private synchronized NodeTypeRegistry loadRegistry(String path) throws RepositoryException {
+    private NodeTypeRegistry loadRegistry(String path) throws RepositoryException {
         NodeTypeRegistry ntr = nodeTypeRegistryMap.get(path);
         if (ntr != null) {
             return ntr;
-        } else {
-            try {
-                ntr = createBaseRegistry();
-                FileObject file = getFile(path);
-                if (file.exists()) {
-                    nodeTypeRegistryMap.put(path, ntr);
-                    namespaceDefinitions.put(ntr, new HashMap<String, String>());
-                    ntr.addDefinitionsFile(new UrlResource(file.getURL()), module.getId());
+        }
+        File realFile;
+        try {
+            realFile = getRealFile(path);
+        } catch (FileSystemException e) {
+            throw new RepositoryException("Failed to load node type registry", e);
+        }
+        long timestamp = realFile.lastModified();
+        ntr = createRegistry(path);
+        if (timestamp > 0) {
+            // another thread may have loaded or written the file in the meantime
+            NodeTypeRegistry previous = nodeTypeRegistryMap.putIfAbsent(path, ntr);
+            if (previous != null) {
+                return previous;
+            }
+            nodeTypeRegistryTimestamps.put(path, timestamp);
+            if (realFile.lastModified() != timestamp) {
+                // the file changed while it was parsed, and its invalidation may have run before the registry was
+                // published: drop it, unless a writer has already replaced it
+                if (nodeTypeRegistryMap.remove(path, ntr)) {
+                    nodeTypeRegistryTimestamps.remove(path, timestamp);
                 }
-            } catch (ParseException | IOException e) {
-                throw new RepositoryException("Failed to load node type registry", e);
+            }
+        }
+        return ntr;
+    }
+
+    /**
+     * Get a private copy of the local NodeTypeRegistry for one specific file, which can be modified and is published
+     * by {@link #writeDefinitionFile(NodeTypeRegistry, String)}. Must be called while holding the lock of this data
+     * source.
+     *
+     * @param path
+     * @return
+     * @throws RepositoryException
+     */
+    private NodeTypeRegistry loadRegistryForUpdate(String path) throws RepositoryException {
+        return createRegistry(path);
+    }
+
+    /**
+     * Creates a registry with the base definitions and the definitions of the specified file, if it exists. Only the
+     * file is parsed.
+     *
+     * @param path
+     * @return
+     * @throws RepositoryException
+     */
+    private NodeTypeRegistry createRegistry(String path) throws RepositoryException {
+        try {
+            NodeTypeRegistry ntr = copyBaseRegistry();
+            FileObject file = getFile(path);
+            if (file.exists()) {
+                ntr.addDefinitionsFile(new UrlResource(file.getURL()), module.getId());
             }
             return ntr;
+        } catch (ParseException | IOException e) {
+            throw new RepositoryException("Failed to load node type registry", e);
         }
     }
 
@@ -2113,9 +2228,6 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
             try {
                 writer = new OutputStreamWriter(new FileOutputStream(getRealFile(path)), "UTF-8");
                 Map<String, String> namespaces = NodeTypeRegistry.getInstance().getNamespaces();
-                if (nodeTypeRegistryMap.containsKey(path)) {
-                    nodeTypeRegistryMap.get(path).flushLabels();
-                }
                 Map<String, String> realUsedNamespaces = new TreeMap<String, String>();
                 NodeTypeIterator nodeTypes = nodeTypeRegistry.getNodeTypes(module.getId());
                 while (nodeTypes.hasNext()) {
@@ -2131,12 +2243,18 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
                     }
                 }
 
-                realUsedNamespaces.putAll(namespaceDefinitions.get(nodeTypeRegistry));
+                Map<String, String> pathNamespaces = namespaceDefinitions.get(path);
+                if (pathNamespaces != null) {
+                    realUsedNamespaces.putAll(pathNamespaces);
+                }
 
                 new JahiaCndWriter(nodeTypeRegistry.getNodeTypes(module.getId()), realUsedNamespaces, writer);
             } finally {
                 IOUtils.closeQuietly(writer);
             }
+            // publish the written registry in place of the previous one
+            nodeTypeRegistryMap.put(path, nodeTypeRegistry);
+            nodeTypeRegistryTimestamps.put(path, getRealFile(path).lastModified());
 
             try {
                 registerCndFiles(getRealFile(path));
@@ -2170,7 +2288,7 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         String uri = data.getProperties().get("j:uri")[0];
 
         String cndPath = getCndPath(data.getPath(), data.getPath().toLowerCase());
-        NodeTypeRegistry ntRegistry = loadRegistry(cndPath);
+        NodeTypeRegistry ntRegistry = loadRegistryForUpdate(cndPath);
 
         NamespaceRegistry nsRegistry = JCRSessionFactory.getInstance().getNamespaceRegistry();
         boolean exists = false;
@@ -2191,9 +2309,13 @@ public class ModulesDataSource extends VFSDataSource implements ExternalDataSour
         }
 
         ntRegistry.getNamespaces().put(prefix, uri);
-        namespaceDefinitions.get(ntRegistry).put(prefix, uri);
+        Map<String, String> pathNamespaces = namespaceDefinitions.get(cndPath);
+        if (pathNamespaces == null) {
+            pathNamespaces = new ConcurrentHashMap<>();
+            namespaceDefinitions.put(cndPath, pathNamespaces);
+        }
+        pathNamespaces.put(prefix, uri);
 
-        nodeTypeRegistryMap.get(StringUtils.substringBeforeLast(data.getPath(), "/")).getNamespaces().put(prefix, uri);
         writeDefinitionFile(ntRegistry, cndPath);
     }
 
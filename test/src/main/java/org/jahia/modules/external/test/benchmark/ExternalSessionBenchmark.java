@@ -0,0 +1,122 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.benchmark;
+
+import org.apache.jackrabbit.core.security.JahiaLoginModule;
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.modules.external.ExternalSessionImpl;
+import org.jahia.modules.external.test.prefetch.StubDataSource;
+import org.jahia.services.content.JCRSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node reads through {@link ExternalSessionImpl}, on the stub providers mounted by the test module: the same back-end
+ * with per-item retrieval, with batch retrieval and with the provider data cache. Each invocation uses a new session,
+ * so that the nodes are not served by the session itself. Run by {@link ExternalProviderBenchmarkTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the mounted providers only exist in the running server
+@Fork(0)
+public class ExternalSessionBenchmark {
+
+    private static final int LOOKUPS = 10;
+
+    @Param({"ExternalStubProvider", "ExternalBatchStubProvider", "ExternalCachedStubProvider"})
+    public String provider;
+
+    private ExternalContentStoreProvider storeProvider;
+
+    private int itemsPerDirectory;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        storeProvider = (ExternalContentStoreProvider) JCRSessionFactory.getInstance().getProviders().get(provider);
+        itemsPerDirectory = ((StubDataSource) storeProvider.getDataSource()).getItemsPerDirectory();
+    }
+
+    private ExternalSessionImpl login() throws RepositoryException {
+        return (ExternalSessionImpl) storeProvider.getSession(JahiaLoginModule.getSystemCredentials(),
+                Constants.EDIT_WORKSPACE);
+    }
+
+    @Benchmark
+    public void getNode(Blackhole blackhole) throws RepositoryException {
+        ExternalSessionImpl session = login();
+        try {
+            for (int i = 0; i < LOOKUPS; i++) {
+                index = (index + 1) % itemsPerDirectory;
+                blackhole.consume(session.getNode("/dir-1/item-" + index).getProperty("region").getString());
+            }
+        } finally {
+            session.logout();
+        }
+    }
+
+    @Benchmark
+    public void getNodes(Blackhole blackhole) throws RepositoryException {
+        ExternalSessionImpl session = login();
+        try {
+            NodeIterator it = session.getNode("/dir-0").getNodes();
+            while (it.hasNext()) {
+                Node node = it.nextNode();
+                blackhole.consume(node.getProperty("region").getString());
+            }
+        } finally {
+            session.logout();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.benchmark;
+
+import org.apache.jackrabbit.core.security.JahiaLoginModule;
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.modules.external.ExternalSessionImpl;
+import org.jahia.services.content.JCRSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads of the toursdb database mapped by the test module, through {@link ExternalSessionImpl}: row lookups, the
+ * traversal of a table and a query on an indexed column, with and without the batch loading of children. Run by
+ * {@link ExternalProviderBenchmarkTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the mounted providers only exist in the running server
+@Fork(0)
+public class MappedDatabaseBenchmark {
+
+    private static final String[] AIRLINES = {"AA", "US"};
+
+    @Param({"ExternalMappedDatabaseProvider", "ExternalCanLoadChildrenInBatchMappedDatabaseProvider"})
+    public String provider;
+
+    private ExternalContentStoreProvider storeProvider;
+
+    private String query;
+
+    @Setup
+    public void setUp() {
+        storeProvider = (ExternalContentStoreProvider) JCRSessionFactory.getInstance().getProviders().get(provider);
+        query = "select * from [jtestnt:city] where [country_iso_code] = 'US' and isdescendantnode('"
+                + storeProvider.getMountPoint() + "')";
+    }
+
+    private ExternalSessionImpl login() throws RepositoryException {
+        return (ExternalSessionImpl) storeProvider.getSession(JahiaLoginModule.getSystemCredentials(),
+                Constants.EDIT_WORKSPACE);
+    }
+
+    @Benchmark
+    public void getRow(Blackhole blackhole) throws RepositoryException {
+        ExternalSessionImpl session = login();
+        try {
+            for (String airline : AIRLINES) {
+                blackhole.consume(session.getNode("/AIRLINES/" + airline).getProperties().getSize());
+            }
+        } finally {
+            session.logout();
+        }
+    }
+
+    @Benchmark
+    public void traverseTable(Blackhole blackhole) throws RepositoryException {
+        ExternalSessionImpl session = login();
+        try {
+            NodeIterator it = session.getNode("/CITIES").getNodes();
+            while (it.hasNext()) {
+                blackhole.consume(it.nextNode().getProperties().getSize());
+            }
+        } finally {
+            session.logout();
+        }
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) throws RepositoryException {
+        ExternalSessionImpl session = login();
+        try {
+            NodeIterator it = session.getWorkspace().getQueryManager().createQuery(query, Query.JCR_SQL2).execute()
+                    .getNodes();
+            while (it.hasNext()) {
+                blackhole.consume(it.nextNode().getPath());
+            }
+        } finally {
+            session.logout();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataCache;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.test.JahiaTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration tests for the provider level data cache: two mounts of the same writable stub back-end have the cache
+ * enabled, and the calls reaching the back-ends are counted.
+ */
+public class ExternalDataCacheTest extends JahiaTestCase {
+
+    private final static String CACHED_PROVIDER_MOUNTPOINT = "/external-stub-cached";
+
+    private final static String OTHER_CACHED_PROVIDER_MOUNTPOINT = "/external-stub-cached-other";
+
+    private ExternalContentStoreProvider provider;
+
+    private ExternalContentStoreProvider otherProvider;
+
+    private WritableStubDataSource dataSource;
+
+    private WritableStubDataSource otherDataSource;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        provider = getProvider("ExternalCachedStubProvider");
+        otherProvider = getProvider("ExternalOtherCachedStubProvider");
+        dataSource = (WritableStubDataSource) provider.getDataSource();
+        otherDataSource = (WritableStubDataSource) otherProvider.getDataSource();
+        dataSource.reset();
+        otherDataSource.reset();
+        provider.getDataCache().flush();
+        otherProvider.getDataCache().flush();
+        JCRSessionFactory.getInstance().closeAllSessions();
+    }
+
+    @After
+    public void tearDown() {
+        JCRSessionFactory.getInstance().closeAllSessions();
+    }
+
+    @Test
+    public void testCacheHits() throws RepositoryException {
+        List<String> values = read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0");
+        int itemCalls = dataSource.getItemCalls();
+        assertTrue("Items should have been read from the data source", itemCalls >= values.size());
+        long hits = provider.getDataCache().getHitCount();
+
+        JCRSessionFactory.getInstance().closeAllSessions();
+        assertEquals(values, read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0"));
+        assertEquals("Items should have been read from the cache", itemCalls, dataSource.getItemCalls());
+        assertTrue("No cache hit recorded", provider.getDataCache().getHitCount() > hits);
+    }
+
+    @Test
+    public void testCachePerProvider() throws RepositoryException {
+        assertNotSame(provider.getDataCache(), otherProvider.getDataCache());
+
+        List<String> values = read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0");
+        assertEquals(0, otherDataSource.getItemCalls());
+        assertEquals(values, read(OTHER_CACHED_PROVIDER_MOUNTPOINT + "/dir-0"));
+        assertTrue("Items of the other provider should not have been read from the first cache",
+                otherDataSource.getItemCalls() >= values.size());
+    }
+
+    @Test
+    public void testReturnedDataIsACopy() throws RepositoryException {
+        read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0");
+        ExternalDataCache cache = provider.getDataCache();
+        ExternalData data = cache.getItemByPath("/dir-0/item-1");
+        assertNotNull("Item should be cached", data);
+        data.getProperties().get("region")[0] = "modified";
+        data.getProperties().put("country_iso_code", new String[] { "modified" });
+
+        ExternalData cached = cache.getItemByPath("/dir-0/item-1");
+        assertEquals("dir-0", cached.getProperties().get("region")[0]);
+        assertEquals("1", cached.getProperties().get("country_iso_code")[0]);
+    }
+
+    @Test
+    public void testInvalidationOnSave() throws RepositoryException {
+        read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0");
+        JCRSessionWrapper session = getSession();
+        session.getNode(CACHED_PROVIDER_MOUNTPOINT + "/dir-0/item-1").setProperty("region", "updated");
+        session.save();
+
+        JCRSessionFactory.getInstance().closeAllSessions();
+        assertEquals("updated", getSession().getNode(CACHED_PROVIDER_MOUNTPOINT + "/dir-0/item-1")
+                .getProperty("region").getString());
+    }
+
+    @Test
+    public void testInvalidationOnMove() throws RepositoryException {
+        read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0");
+        read(CACHED_PROVIDER_MOUNTPOINT + "/dir-1");
+        JCRSessionWrapper session = getSession();
+        session.move(CACHED_PROVIDER_MOUNTPOINT + "/dir-0/item-1", CACHED_PROVIDER_MOUNTPOINT + "/dir-1/item-moved");
+        session.save();
+
+        JCRSessionFactory.getInstance().closeAllSessions();
+        session = getSession();
+        assertFalse(session.nodeExists(CACHED_PROVIDER_MOUNTPOINT + "/dir-0/item-1"));
+        assertFalse(getNames(CACHED_PROVIDER_MOUNTPOINT + "/dir-0").contains("item-1"));
+        assertTrue(getNames(CACHED_PROVIDER_MOUNTPOINT + "/dir-1").contains("item-moved"));
+        assertEquals("1", session.getNode(CACHED_PROVIDER_MOUNTPOINT + "/dir-1/item-moved")
+                .getProperty("country_iso_code").getString());
+    }
+
+    @Test
+    public void testInvalidationOnWorkspaceMove() throws RepositoryException {
+        read(CACHED_PROVIDER_MOUNTPOINT + "/dir-0");
+        read(CACHED_PROVIDER_MOUNTPOINT + "/dir-1");
+        getSession().getWorkspace().move(CACHED_PROVIDER_MOUNTPOINT + "/dir-0/item-2",
+                CACHED_PROVIDER_MOUNTPOINT + "/dir-1/item-moved");
+
+        JCRSessionFactory.getInstance().closeAllSessions();
+        JCRSessionWrapper session = getSession();
+        assertFalse(session.nodeExists(CACHED_PROVIDER_MOUNTPOINT + "/dir-0/item-2"));
+        assertFalse(getNames(CACHED_PROVIDER_MOUNTPOINT + "/dir-0").contains("item-2"));
+        assertTrue(getNames(CACHED_PROVIDER_MOUNTPOINT + "/dir-1").contains("item-moved"));
+        assertEquals("2", session.getNode(CACHED_PROVIDER_MOUNTPOINT + "/dir-1/item-moved")
+                .getProperty("country_iso_code").getString());
+    }
+
+    @Test
+    public void testInvalidationDuringPut() throws Exception {
+        final ExternalDataCache cache = provider.getDataCache();
+        final String path = "/race/item";
+        final AtomicInteger backend = new AtomicInteger();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        // loads the item as the session does: stamp first, then the data source, then the cache
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    long stamp = cache.getStamp();
+                    cache.putItem(createData(path, backend.get()), stamp);
+                    cache.putChildren("/race", Collections.singletonList("item" + backend.get()), stamp);
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 1; i <= 20000; i++) {
+                backend.set(i);
+                cache.invalidate(path);
+            }
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+
+        ExternalData cached = cache.getItemByPath(path);
+        if (cached != null) {
+            assertEquals("A value loaded before the last invalidation was cached", String.valueOf(backend.get()),
+                    cached.getProperties().get("value")[0]);
+        }
+        List<String> children = cache.getChildren("/race");
+        if (children != null) {
+            assertEquals("A children list loaded before the last invalidation was cached",
+                    Collections.singletonList("item" + backend.get()), children);
+        }
+    }
+
+    private static ExternalData createData(String path, int value) {
+        Map<String, String[]> properties = new HashMap<String, String[]>();
+        properties.put("value", new String[] { String.valueOf(value) });
+        return new ExternalData(path, path, "jnt:contentList", properties);
+    }
+
+    /**
+     * Reads the children of the given directory and returns their region and code properties.
+     */
+    private List<String> read(String path) throws RepositoryException {
+        List<String> values = new ArrayList<String>();
+        NodeIterator it = getSession().getNode(path).getNodes();
+        while (it.hasNext()) {
+            JCRNodeWrapper node = (JCRNodeWrapper) it.nextNode();
+            values.add(node.getName() + "=" + node.getProperty("region").getString() + "/"
+                    + node.getProperty("country_iso_code").getString());
+        }
+        return values;
+    }
+
+    private List<String> getNames(String path) throws RepositoryException {
+        List<String> names = new ArrayList<String>();
+        NodeIterator it = getSession().getNode(path).getNodes();
+        while (it.hasNext()) {
+            names.add(it.nextNode().getName());
+        }
+        return names;
+    }
+
+    private static JCRSessionWrapper getSession() throws RepositoryException {
+        return JCRSessionFactory.getInstance().getCurrentUserSession(Constants.EDIT_WORKSPACE, Locale.ENGLISH);
+    }
+
+    private static ExternalContentStoreProvider getProvider(String key) {
+        return (ExternalContentStoreProvider) JCRSessionFactory.getInstance().getProviders().get(key);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataSource;
+import org.jahia.modules.external.test.prefetch.StubDataSource;
+
+/**
+ * Stub data source keeping the modifications done to its generated items in memory.
+ */
+public class WritableStubDataSource extends StubDataSource implements ExternalDataSource.Writable {
+
+    private final Map<String, ExternalData> savedItems = new ConcurrentHashMap<String, ExternalData>();
+
+    private final Set<String> removedPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Override
+    public List<String> getChildren(String path) throws RepositoryException {
+        List<String> children = new ArrayList<String>();
+        String prefix = "/".equals(path) ? "/" : path + "/";
+        for (String name : super.getChildren(path)) {
+            if (!removedPaths.contains(prefix + name)) {
+                children.add(name);
+            }
+        }
+        for (String savedPath : savedItems.keySet()) {
+            if (prefix.equals(StringUtils.substringBeforeLast(savedPath, "/") + "/")
+                    && !children.contains(StringUtils.substringAfterLast(savedPath, "/"))) {
+                children.add(StringUtils.substringAfterLast(savedPath, "/"));
+            }
+        }
+        return children;
+    }
+
+    @Override
+    protected ExternalData createItem(String path) {
+        if (removedPaths.contains(path)) {
+            return null;
+        }
+        ExternalData saved = savedItems.get(path);
+        if (saved != null) {
+            return new ExternalData(saved.getId(), path, saved.getType(),
+                    new HashMap<String, String[]>(saved.getProperties()));
+        }
+        return super.createItem(path);
+    }
+
+    @Override
+    public void move(String oldPath, String newPath) throws RepositoryException {
+        ExternalData data = createItem(oldPath);
+        if (data == null) {
+            throw new PathNotFoundException(oldPath);
+        }
+        removeItemByPath(oldPath);
+        savedItems.put(newPath, new ExternalData("stub:" + newPath, newPath, data.getType(), data.getProperties()));
+        removedPaths.remove(newPath);
+    }
+
+    @Override
+    public void order(String path, List<String> children) throws RepositoryException {
+        // order is not kept
+    }
+
+    @Override
+    public void removeItemByPath(String path) throws RepositoryException {
+        savedItems.remove(path);
+        removedPaths.add(path);
+    }
+
+    @Override
+    public void saveItem(ExternalData data) throws RepositoryException {
+        savedItems.put(data.getPath(), new ExternalData("stub:" + data.getPath(), data.getPath(), data.getType(),
+                new HashMap<String, String[]>(data.getProperties())));
+        removedPaths.remove(data.getPath());
+    }
+
+    /**
+     * Drops all the modifications, restoring the generated items.
+     */
+    public void reset() {
+        savedItems.clear();
+        removedPaths.clear();
+        resetCalls();
+    }
+}
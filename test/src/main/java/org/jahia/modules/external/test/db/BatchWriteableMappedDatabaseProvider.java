@@ -0,0 +1,120 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.db;
+
+import org.apache.jackrabbit.core.util.db.DbUtility;
+import org.jahia.modules.external.ExternalChangeSet;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writable database data source which applies the changes of a session save, orderings included, on a single
+ * connection, with one commit.
+ */
+public class BatchWriteableMappedDatabaseProvider extends WriteableMappedDatabaseProvider implements ExternalDataSource.CanSaveItemsInBatch {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchWriteableMappedDatabaseProvider.class);
+
+    private final AtomicInteger batchSaves = new AtomicInteger();
+
+    @Override
+    public void saveItems(ExternalChangeSet changeSet) throws RepositoryException {
+        batchSaves.incrementAndGet();
+        Connection conn = getConnection();
+        try {
+            conn.setAutoCommit(false);
+            for (Map.Entry<String, List<String>> entry : changeSet.getOrderedChildren().entrySet()) {
+                order(entry.getKey(), entry.getValue(), conn);
+            }
+            for (ExternalData data : changeSet.getSavedItems()) {
+                saveItem(data, conn);
+            }
+            for (String path : changeSet.getRemovedPaths()) {
+                deleteRow(path, conn);
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw new RepositoryException(e);
+        } catch (RepositoryException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            restoreAutoCommit(conn);
+            DbUtility.close(conn, null, null);
+        }
+    }
+
+    /**
+     * Returns the number of change sets applied by this data source.
+     */
+    public int getBatchSaves() {
+        return batchSaves.get();
+    }
+
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.warn("Cannot rollback changes", e);
+        }
+    }
+
+    private void restoreAutoCommit(Connection conn) {
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.warn("Cannot restore auto commit", e);
+        }
+    }
+}
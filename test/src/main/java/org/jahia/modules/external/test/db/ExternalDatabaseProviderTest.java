@@ -66,6 +66,7 @@ import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
 
 import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalContentStoreProvider;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRPropertyWrapper;
 import org.jahia.services.content.JCRSessionFactory;
@@ -94,6 +95,10 @@ public class ExternalDatabaseProviderTest extends JahiaTestCase {
 
     private final static String BATCH_CHILDREN_PROVIDER_MOUNTPOINT = "/external-database-mapped-batch-children";
 
+    private final static String WRITEABLE_PROVIDER_MOUNTPOINT = "/external-writeable-database-mapped";
+
+    private final static String BATCH_WRITEABLE_PROVIDER_MOUNTPOINT = "/external-writeable-database-mapped-batch";
+
     private static final String TESTSITE_NAME = "externalProviderExportTest";
 
     @BeforeClass
@@ -587,7 +592,19 @@ public class ExternalDatabaseProviderTest extends JahiaTestCase {
 
     @Test
     public void testWritableAddNode() throws RepositoryException {
-        final JCRNodeWrapper parent = session.getNode("/external-writeable-database-mapped/AIRLINES");
+        // changes saved item by item
+        testWritableAddNode(WRITEABLE_PROVIDER_MOUNTPOINT);
+
+        // changes saved as one change set
+        BatchWriteableMappedDatabaseProvider batchDataSource = (BatchWriteableMappedDatabaseProvider) ((ExternalContentStoreProvider) JCRSessionFactory
+                .getInstance().getProviders().get("BatchWritableDatabaseDataSource")).getDataSource();
+        int batchSaves = batchDataSource.getBatchSaves();
+        testWritableAddNode(BATCH_WRITEABLE_PROVIDER_MOUNTPOINT);
+        assertEquals("Each save should have been applied as one change set", batchSaves + 3, batchDataSource.getBatchSaves());
+    }
+
+    public void testWritableAddNode(String mountpoint) throws RepositoryException {
+        final JCRNodeWrapper parent = session.getNode(mountpoint + "/AIRLINES");
         JCRNodeWrapper n = parent.addNode("TS", "jtestnt:airline");
 //        JCRNodeWrapper n = session.getNode("/external-writeable-database-mapped/AIRLINES/AT")
         n.setProperty("airline","TS");
@@ -83,43 +83,63 @@ public class WriteableMappedDatabaseProvider extends MappedDatabaseDataSource im
 
     @Override
     public void order(String path, List<String> children) throws RepositoryException {
-        //
+        Connection conn = getConnection();
+        try {
+            order(path, children, conn);
+        } finally {
+            DbUtility.close(conn, null, null);
+        }
+    }
+
+    protected void order(String path, List<String> children, Connection conn) throws RepositoryException {
+        // rows are not ordered
     }
 
     @Override
     public void removeItemByPath(String path) throws RepositoryException {
-        deleteRow(path);
+        Connection conn = getConnection();
+        try {
+            deleteRow(path, conn);
+        } finally {
+            DbUtility.close(conn, null, null);
+        }
     }
 
     @Override
     public void saveItem(ExternalData data) throws RepositoryException {
+        Connection conn = getConnection();
+        try {
+            saveItem(data, conn);
+        } finally {
+            DbUtility.close(conn, null, null);
+        }
+    }
+
+    protected void saveItem(ExternalData data, Connection conn) throws RepositoryException {
         String type = getNodeTypeName(data.getPath());
         if (type.equals(getSchemaNodeType()) || type.equals(getTableNodeType())) {
             throw new UnsupportedRepositoryOperationException();
         }
         if (data.isNew()) {
-            insertRow(data.getPath(), data);
+            insertRow(data.getPath(), data, conn);
             data.setId(data.getPath().replace('/', '_'));
         } else {
-            updateRow(data.getPath(), data);
+            updateRow(data.getPath(), data, conn);
         }
 
     }
 
-    private void insertRow(String path, ExternalData data) throws RepositoryException {
+    private void insertRow(String path, ExternalData data, Connection conn) throws RepositoryException {
         String[] pathTokens = StringUtils.split(path, '/');
         if (pathTokens.length != 2) {
             throw new PathNotFoundException(path);
         }
         String table = pathTokens[0];
 
-        Connection conn = null;
         Statement stmt = null;
         Map<String, String> cols = getColumnValues(data, table);
         String v = " (" + StringUtils.join(cols.keySet(), ",") + ") values (" + StringUtils.join(cols.values(), ",") + ")";
         try {
-            conn = getConnection();
-
             String query = "insert into " + table + v;
 
             stmt = conn.createStatement();
@@ -128,12 +148,12 @@ public class WriteableMappedDatabaseProvider extends MappedDatabaseDataSource im
             logger.debug(e.getMessage(), e);
             throw new RepositoryException(path,e);
         } finally {
-            DbUtility.close(conn, stmt, null);
+            DbUtility.close(null, stmt, null);
         }
     }
 
 
-    private void updateRow(String path, ExternalData data) throws RepositoryException {
+    private void updateRow(String path, ExternalData data, Connection conn) throws RepositoryException {
         String[] pathTokens = StringUtils.split(path, '/');
         if (pathTokens.length != 2) {
             throw new PathNotFoundException(path);
@@ -141,12 +161,10 @@ public class WriteableMappedDatabaseProvider extends MappedDatabaseDataSource im
         String table = pathTokens[0];
         String rowId = pathTokens[1];
 
-        Connection conn = null;
         Statement stmt = null;
         ResultSet rs = null;
 
         try {
-            conn = getConnection();
             List<String> primaryKeys = getTablePrimaryKeys(table, conn);
 
             String[] rowData = getValuesForPrimayKeys(rowId);
@@ -180,11 +198,11 @@ public class WriteableMappedDatabaseProvider extends MappedDatabaseDataSource im
             logger.debug(e.getMessage(), e);
             throw new RepositoryException(path,e);
         } finally {
-            DbUtility.close(conn, stmt, rs);
+            DbUtility.close(null, stmt, rs);
         }
     }
 
-    private void deleteRow(String path) throws RepositoryException {
+    protected void deleteRow(String path, Connection conn) throws RepositoryException {
         String[] pathTokens = StringUtils.split(path, '/');
         if (pathTokens.length != 2) {
             throw new PathNotFoundException(path);
@@ -192,12 +210,10 @@ public class WriteableMappedDatabaseProvider extends MappedDatabaseDataSource im
         String table = pathTokens[0];
         String rowId = pathTokens[1];
 
-        Connection conn = null;
         Statement stmt = null;
         ResultSet rs = null;
 
         try {
-            conn = getConnection();
             List<String> primaryKeys = getTablePrimaryKeys(table, conn);
 
             String[] rowData = getValuesForPrimayKeys(rowId);
@@ -223,7 +239,7 @@ public class WriteableMappedDatabaseProvider extends MappedDatabaseDataSource im
             logger.debug(e.getMessage(), e);
             throw new RepositoryException(path,e);
         } finally {
-            DbUtility.close(conn, stmt, rs);
+            DbUtility.close(null, stmt, rs);
         }
     }
 
@@ -0,0 +1,202 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.id;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.modules.external.ExternalProviderInitializerService;
+import org.jahia.services.SpringContextSingleton;
+import org.jahia.services.cache.ehcache.EhCacheProvider;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.test.JahiaTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration tests for the batch creation, lookup, update and removal of the identifier mappings, done with a provider key
+ * of its own which is removed after each test.
+ */
+public class ExternalIdentifierMappingTest extends JahiaTestCase {
+
+    private static final String PROVIDER_KEY = "ExternalIdentifierMappingTest";
+
+    // more than the number of IDs looked up or inserted at once
+    private static final int MAPPINGS = 1200;
+
+    private ExternalProviderInitializerService service;
+
+    private String providerId;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        service = ((ExternalContentStoreProvider) JCRSessionFactory.getInstance().getProviders()
+                .get("ExternalStubProvider")).getExternalProviderInitializerService();
+        providerId = String.valueOf(service.getProviderId(PROVIDER_KEY));
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        service.removeProvider(PROVIDER_KEY);
+    }
+
+    @Test
+    public void testBatchedCreationAndLookup() throws RepositoryException {
+        List<String> externalIds = new ArrayList<String>();
+        for (int i = 0; i < MAPPINGS; i++) {
+            externalIds.add("/batch/item-" + i);
+        }
+        // same hash code, must not share their mapping
+        externalIds.add("/collision/Aa");
+        externalIds.add("/collision/BB");
+        // longer than a VARCHAR column, stored as a LOB
+        externalIds.add("/long/" + StringUtils.repeat("x", 5000));
+
+        Map<String, String> created = service.getOrCreateInternalIdentifiers(externalIds, PROVIDER_KEY, providerId);
+        assertEquals(externalIds.size(), created.size());
+        assertEquals("Internal identifiers should be unique", externalIds.size(),
+                new HashSet<String>(created.values()).size());
+
+        assertEquals(created, service.getOrCreateInternalIdentifiers(externalIds, PROVIDER_KEY, providerId));
+        assertEquals(created, service.getInternalIdentifiers(externalIds, PROVIDER_KEY));
+
+        // read back from the database, through Hibernate
+        Map<String, String> externalIdsByUuid = service.getExternalIdentifiers(created.values());
+        assertEquals(externalIds.size(), externalIdsByUuid.size());
+        for (Map.Entry<String, String> entry : created.entrySet()) {
+            assertEquals(entry.getKey(), externalIdsByUuid.get(entry.getValue()));
+        }
+        String longId = externalIds.get(externalIds.size() - 1);
+        assertEquals(longId, service.getExternalIdentifier(created.get(longId)));
+    }
+
+    @Test
+    public void testBatchedUpdate() throws RepositoryException {
+        String longId = "/long/" + StringUtils.repeat("y", 5000);
+        List<String> externalIds = new ArrayList<String>();
+        Map<String, String> renames = new HashMap<String, String>();
+        for (int i = 0; i < MAPPINGS; i++) {
+            externalIds.add("/batch/item-" + i);
+            renames.put("/batch/item-" + i, "/renamed/item-" + i);
+        }
+        externalIds.addAll(Arrays.asList("/collision/Aa", "/collision/BB", longId));
+        // only one of the colliding IDs is renamed
+        renames.put("/collision/Aa", "/renamed/Aa");
+        renames.put(longId, longId + "-renamed");
+        Map<String, String> created = service.getOrCreateInternalIdentifiers(externalIds, PROVIDER_KEY, providerId);
+
+        service.updateExternalIdentifiers(renames, PROVIDER_KEY);
+
+        Map<String, String> externalIdsByUuid = service.getExternalIdentifiers(created.values());
+        for (String externalId : externalIds) {
+            String expected = renames.containsKey(externalId) ? renames.get(externalId) : externalId;
+            assertEquals(expected, externalIdsByUuid.get(created.get(externalId)));
+        }
+        Map<String, String> lookup = service.getInternalIdentifiers(renames.values(), PROVIDER_KEY);
+        for (Map.Entry<String, String> entry : renames.entrySet()) {
+            assertEquals(created.get(entry.getKey()), lookup.get(entry.getValue()));
+        }
+        assertFalse(service.getInternalIdentifiers(renames.keySet(), PROVIDER_KEY).containsKey("/collision/Aa"));
+        assertEquals(created.get("/collision/BB"),
+                service.getInternalIdentifiers(Arrays.asList("/collision/BB"), PROVIDER_KEY).get("/collision/BB"));
+    }
+
+    @Test
+    public void testUnmappedLookupExpires() throws RepositoryException {
+        String externalId = "/unmapped/item";
+        assertFalse(service.getInternalIdentifiers(Arrays.asList(externalId), PROVIDER_KEY).containsKey(externalId));
+
+        // mappings created on another cluster node do not invalidate this entry, it must expire
+        Cache identifierCache = ((EhCacheProvider) SpringContextSingleton.getBean("ehCacheProvider")).getCacheManager()
+                .getCache("ExternalIdentifierMapping");
+        Element element = identifierCache.get(PROVIDER_KEY + "-" + externalId.hashCode());
+        assertNotNull("Unmapped ID should be cached", element);
+        assertFalse(element.isEternal());
+        assertTrue(element.getTimeToLive() > 0);
+
+        String uuid = service.getOrCreateInternalIdentifiers(Arrays.asList(externalId), PROVIDER_KEY, providerId)
+                .get(externalId);
+        element = identifierCache.get(PROVIDER_KEY + "-" + externalId.hashCode());
+        assertTrue("Mapped ID should be cached without expiration", element.isEternal());
+        assertEquals(uuid, service.getInternalIdentifier(externalId, PROVIDER_KEY));
+    }
+
+    @Test
+    public void testDeleteWithDescendants() throws RepositoryException {
+        List<String> removed = Arrays.asList("/root/a", "/root/a/b", "/root/a/b/c", "/root/c/d");
+        List<String> kept = Arrays.asList("/root/ab", "/root/a-b", "/other/a/b", "/root/c");
+        List<String> externalIds = new ArrayList<String>(removed);
+        externalIds.addAll(kept);
+        Map<String, String> created = service.getOrCreateInternalIdentifiers(externalIds, PROVIDER_KEY, providerId);
+
+        service.delete(Arrays.asList("/root/a", "/root/a/b", "/root/c/d"), PROVIDER_KEY, true);
+
+        Map<String, String> remaining = service.getExternalIdentifiers(created.values());
+        assertEquals(new HashSet<String>(kept), new HashSet<String>(remaining.values()));
+        Map<String, String> lookup = service.getInternalIdentifiers(externalIds, PROVIDER_KEY);
+        for (String externalId : removed) {
+            assertFalse(externalId + " should not be mapped anymore", lookup.containsKey(externalId));
+        }
+        for (String externalId : kept) {
+            assertNotNull(externalId + " should still be mapped", lookup.get(externalId));
+            assertEquals(created.get(externalId), lookup.get(externalId));
+        }
+    }
+}
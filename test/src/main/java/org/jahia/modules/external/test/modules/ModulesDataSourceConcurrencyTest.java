@@ -0,0 +1,132 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.modules;
+
+import org.apache.commons.io.FileUtils;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.modules.ModulesDataSource;
+import org.jahia.registries.ServicesRegistry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that concurrent edits of the same definition file through the {@link ModulesDataSource} are all written to
+ * the file, none of them overwriting the other ones.
+ */
+public class ModulesDataSourceConcurrencyTest {
+
+    // legacy definitions files are not registered in the global registry
+    private static final String CND_PATH = "/src/main/resources/META-INF/legacy_concurrent.cnd";
+
+    private static final int TYPES_PER_THREAD = 10;
+
+    private static File rootDir;
+
+    private static ModulesDataSource dataSource;
+
+    @BeforeClass
+    public static void oneTimeSetUp() throws IOException {
+        rootDir = new File(FileUtils.getTempDirectory(), "modulesDataSourceConcurrencyTest-" + System.currentTimeMillis());
+        FileUtils.writeStringToFile(new File(rootDir, CND_PATH), "", "UTF-8");
+
+        dataSource = new ModulesDataSource();
+        dataSource.setRoot("file://" + rootDir.getAbsolutePath());
+        dataSource.setModule(ServicesRegistry.getInstance().getJahiaTemplateManagerService().getTemplatePackageById("external-provider-test"));
+    }
+
+    @AfterClass
+    public static void oneTimeTearDown() throws IOException {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Test
+    public void testConcurrentNodeTypeEdits() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final String prefix : new String[]{"jnt:concurrentTestA", "jnt:concurrentTestB"}) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < TYPES_PER_THREAD; i++) {
+                            String path = CND_PATH + "/" + prefix + i;
+                            dataSource.saveItem(new ExternalData(path, path, "jnt:primaryNodeType",
+                                    new HashMap<String, String[]>()));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String cnd = FileUtils.readFileToString(new File(rootDir, CND_PATH), "UTF-8");
+        for (int i = 0; i < TYPES_PER_THREAD; i++) {
+            assertTrue("Missing jnt:concurrentTestA" + i + " in definition file", cnd.contains("[jnt:concurrentTestA" + i + "]"));
+            assertTrue("Missing jnt:concurrentTestB" + i + " in definition file", cnd.contains("[jnt:concurrentTestB" + i + "]"));
+        }
+    }
+}
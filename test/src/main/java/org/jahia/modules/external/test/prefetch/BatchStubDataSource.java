@@ -0,0 +1,152 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.prefetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.RepositoryException;
+
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataSource;
+
+/**
+ * Stub data source which also supports batch retrieval of items: each batch costs a single round-trip. The maximum
+ * number of batches in flight at the same time is recorded, so that tests can check concurrent retrieval. Items can
+ * be given a multi-valued reference property pointing to other items.
+ */
+public class BatchStubDataSource extends StubDataSource implements ExternalDataSource.CanLoadItemsInBatch {
+
+    public static final String REFERENCES_PROPERTY = "neighbours";
+
+    private final AtomicInteger batchCalls = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final Map<String, String[]> references = new ConcurrentHashMap<String, String[]>();
+
+    @Override
+    public List<ExternalData> getItemsByPath(List<String> paths) throws RepositoryException {
+        int current = inFlight.incrementAndGet();
+        try {
+            int max;
+            do {
+                max = maxInFlight.get();
+            } while (current > max && !maxInFlight.compareAndSet(max, current));
+            roundTrip();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        batchCalls.incrementAndGet();
+        List<ExternalData> items = new ArrayList<ExternalData>(paths.size());
+        for (String path : paths) {
+            ExternalData data = createItem(path);
+            if (data != null) {
+                items.add(data);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public List<ExternalData> getItemsByIdentifier(List<String> identifiers) throws RepositoryException {
+        roundTrip();
+        batchCalls.incrementAndGet();
+        List<ExternalData> items = new ArrayList<ExternalData>(identifiers.size());
+        for (String identifier : identifiers) {
+            ExternalData data = identifier.startsWith("stub:") ? createItem(identifier.substring(5)) : null;
+            if (data != null) {
+                items.add(data);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    protected ExternalData createItem(String path) {
+        ExternalData data = super.createItem(path);
+        String[] identifiers = references.get(path);
+        if (data != null && identifiers != null && DATA_TYPE_ITEM.equals(data.getType())) {
+            data.getProperties().put(REFERENCES_PROPERTY, identifiers);
+        }
+        return data;
+    }
+
+    /**
+     * Sets the internal identifiers of the nodes referenced by the item at the specified path, or removes them if null.
+     */
+    public void setReferences(String path, String[] identifiers) {
+        if (identifiers != null) {
+            references.put(path, identifiers);
+        } else {
+            references.remove(path);
+        }
+    }
+
+    /**
+     * Returns the number of batch retrievals since the last reset.
+     */
+    public int getBatchCalls() {
+        return batchCalls.get();
+    }
+
+    /**
+     * Returns the maximum number of batch retrievals by path which were running at the same time since the last reset.
+     */
+    public int getMaxConcurrentBatches() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void resetCalls() {
+        super.resetCalls();
+        batchCalls.set(0);
+        maxInFlight.set(0);
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.prefetch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.test.JahiaTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration tests for the batch retrieval of items: the same stub back-end is mounted once with per-item retrieval
+ * only and once with batch retrieval support, and the number of calls needed to traverse a directory is compared.
+ */
+public class ItemPrefetchTest extends JahiaTestCase {
+
+    private final static String STUB_PROVIDER_MOUNTPOINT = "/external-stub";
+
+    private final static String BATCH_STUB_PROVIDER_MOUNTPOINT = "/external-stub-batch";
+
+    private final static String STREAMING_STUB_PROVIDER_MOUNTPOINT = "/external-stub-streaming";
+
+    // less than the prefetch batch size of the batch stub provider
+    private final static int REFERENCES = 20;
+
+    private JCRSessionWrapper session;
+
+    private StubDataSource stubDataSource;
+
+    private BatchStubDataSource batchStubDataSource;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = JCRSessionFactory.getInstance().getCurrentUserSession(Constants.EDIT_WORKSPACE, Locale.ENGLISH);
+
+        assertTrue("Cannot find mounted provider at " + STUB_PROVIDER_MOUNTPOINT,
+                session.nodeExists(STUB_PROVIDER_MOUNTPOINT));
+        assertTrue("Cannot find mounted provider at " + BATCH_STUB_PROVIDER_MOUNTPOINT,
+                session.nodeExists(BATCH_STUB_PROVIDER_MOUNTPOINT));
+
+        stubDataSource = (StubDataSource) getProvider("ExternalStubProvider").getDataSource();
+        batchStubDataSource = (BatchStubDataSource) getProvider("ExternalBatchStubProvider").getDataSource();
+    }
+
+    @After
+    public void tearDown() {
+        session.logout();
+    }
+
+    @Test
+    public void testIteratorPrefetch() throws RepositoryException {
+        int items = stubDataSource.getItemsPerDirectory();
+
+        stubDataSource.resetCalls();
+        List<String> names = traverse(STUB_PROVIDER_MOUNTPOINT + "/dir-0");
+        assertEquals(items, names.size());
+        assertTrue("Each child should have been retrieved separately", stubDataSource.getItemCalls() >= items);
+
+        batchStubDataSource.resetCalls();
+        List<String> batchNames = traverse(BATCH_STUB_PROVIDER_MOUNTPOINT + "/dir-0");
+        assertEquals(names, batchNames);
+
+        ExternalContentStoreProvider batchProvider = getProvider("ExternalBatchStubProvider");
+        int batchSize = batchProvider.getPrefetchBatchSize();
+        int expectedBatches = (items + batchSize - 1) / batchSize;
+        assertEquals("Children should have been retrieved in batches", expectedBatches,
+                batchStubDataSource.getBatchCalls());
+        assertTrue("Too many calls with batch retrieval: " + batchStubDataSource.getCalls(),
+                batchStubDataSource.getCalls() < stubDataSource.getCalls() / 10);
+        int concurrentBatches = batchStubDataSource.getMaxConcurrentBatches();
+        assertTrue("Batches of a page should have been retrieved concurrently", concurrentBatches > 1);
+        assertTrue("More concurrent batches than prefetch threads: " + concurrentBatches,
+                concurrentBatches <= batchProvider.getPrefetchThreads());
+    }
+
+    @Test
+    public void testPrefetchedProperties() throws RepositoryException {
+        NodeIterator it = session.getNode(BATCH_STUB_PROVIDER_MOUNTPOINT + "/dir-1").getNodes();
+        while (it.hasNext()) {
+            JCRNodeWrapper node = (JCRNodeWrapper) it.nextNode();
+            JCRNodeWrapper reference = session.getNode(STUB_PROVIDER_MOUNTPOINT + "/dir-1/" + node.getName());
+            assertTrue(node.isNodeType(StubDataSource.DATA_TYPE_ITEM));
+            assertEquals(reference.getProperty("country_iso_code").getString(),
+                    node.getProperty("country_iso_code").getString());
+            assertEquals("dir-1", node.getProperty("region").getString());
+            assertEquals(node.getIdentifier(), session.getNodeByIdentifier(node.getIdentifier()).getIdentifier());
+        }
+    }
+
+    @Test
+    public void testReferencePrefetch() throws RepositoryException {
+        List<String> externalIds = new ArrayList<String>();
+        for (int i = 0; i < REFERENCES; i++) {
+            externalIds.add("stub:/dir-2/item-" + i);
+        }
+        Map<String, String> internalIds = getProvider("ExternalBatchStubProvider").getOrCreateInternalIdentifiers(
+                externalIds);
+        String[] references = new String[REFERENCES];
+        for (int i = 0; i < REFERENCES; i++) {
+            references[i] = internalIds.get(externalIds.get(i));
+        }
+        batchStubDataSource.setReferences("/dir-0/item-0", references);
+        try {
+            JCRSessionFactory.getInstance().closeAllSessions();
+            session = JCRSessionFactory.getInstance().getCurrentUserSession(Constants.EDIT_WORKSPACE, Locale.ENGLISH);
+            JCRNodeWrapper node = session.getNode(BATCH_STUB_PROVIDER_MOUNTPOINT + "/dir-0/item-0");
+            session.getNode(BATCH_STUB_PROVIDER_MOUNTPOINT + "/dir-2");
+
+            batchStubDataSource.resetCalls();
+            Value[] values = node.getProperty(BatchStubDataSource.REFERENCES_PROPERTY).getValues();
+            assertEquals(REFERENCES, values.length);
+            assertEquals("Referenced nodes should have been retrieved in one batch", 1,
+                    batchStubDataSource.getBatchCalls());
+            for (int i = 0; i < REFERENCES; i++) {
+                assertEquals(BATCH_STUB_PROVIDER_MOUNTPOINT + "/dir-2/item-" + i,
+                        session.getNodeByIdentifier(values[i].getString()).getPath());
+            }
+            assertTrue("Referenced nodes should not have been retrieved one by one: "
+                    + batchStubDataSource.getItemCalls(), batchStubDataSource.getItemCalls() < REFERENCES / 2);
+        } finally {
+            batchStubDataSource.setReferences("/dir-0/item-0", null);
+        }
+    }
+
+    @Test
+    public void testQueryResultPrefetch() throws RepositoryException {
+        BatchStubDataSource streamingStubDataSource = (BatchStubDataSource) getProvider(
+                "ExternalStreamingStubProvider").getDataSource();
+        int items = streamingStubDataSource.getItemsPerDirectory();
+
+        streamingStubDataSource.resetCalls();
+        Query query = session.getWorkspace().getQueryManager().createQuery("select * from [jtestnt:country] as c"
+                + " where c.region = 'dir-0' and isdescendantnode(c, '" + STREAMING_STUB_PROVIDER_MOUNTPOINT + "')",
+                Query.JCR_SQL2);
+        List<String> paths = new ArrayList<String>();
+        NodeIterator it = query.execute().getNodes();
+        while (it.hasNext()) {
+            paths.add(it.nextNode().getPath());
+        }
+        assertEquals(items, paths.size());
+
+        assertTrue("Result pages should have been retrieved in batches", streamingStubDataSource.getBatchCalls() > 0);
+        assertTrue("Too many batches: " + streamingStubDataSource.getBatchCalls(),
+                streamingStubDataSource.getBatchCalls() < items / 10);
+        assertTrue("Results should not have been retrieved one by one: " + streamingStubDataSource.getItemCalls(),
+                streamingStubDataSource.getItemCalls() < items / 10);
+    }
+
+    private List<String> traverse(String path) throws RepositoryException {
+        List<String> names = new ArrayList<String>();
+        NodeIterator it = session.getNode(path).getNodes();
+        while (it.hasNext()) {
+            names.add(it.nextNode().getName());
+        }
+        return names;
+    }
+
+    private static ExternalContentStoreProvider getProvider(String key) {
+        return (ExternalContentStoreProvider) JCRSessionFactory.getInstance().getProviders().get(key);
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.prefetch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataSource;
+
+/**
+ * Local in-memory data source simulating a remote back-end: a catalog of directories holding items, where each call
+ * costs a fixed latency. Calls are counted so that tests can check how many round-trips a traversal costs.
+ */
+public class StubDataSource implements ExternalDataSource {
+
+    public static final String DATA_TYPE_CATALOG = "jtestnt:catalog";
+
+    public static final String DATA_TYPE_DIRECTORY = "jtestnt:directory";
+
+    public static final String DATA_TYPE_ITEM = "jtestnt:country";
+
+    private static final Set<String> SUPPORTED_NODE_TYPES = new HashSet<String>(Arrays.asList(DATA_TYPE_CATALOG,
+            DATA_TYPE_DIRECTORY, DATA_TYPE_ITEM));
+
+    private int directories = 3;
+
+    private int itemsPerDirectory = 250;
+
+    private long latency = 5;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicInteger itemCalls = new AtomicInteger();
+
+    @Override
+    public List<String> getChildren(String path) throws RepositoryException {
+        roundTrip();
+        List<String> children = new ArrayList<String>();
+        if ("/".equals(path)) {
+            for (int i = 0; i < directories; i++) {
+                children.add("dir-" + i);
+            }
+        } else if (isDirectory(path)) {
+            for (int i = 0; i < itemsPerDirectory; i++) {
+                children.add("item-" + i);
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public ExternalData getItemByIdentifier(String identifier) throws ItemNotFoundException {
+        roundTrip();
+        itemCalls.incrementAndGet();
+        ExternalData data = identifier.startsWith("stub:") ? createItem(identifier.substring(5)) : null;
+        if (data == null) {
+            throw new ItemNotFoundException(identifier);
+        }
+        return data;
+    }
+
+    @Override
+    public ExternalData getItemByPath(String path) throws PathNotFoundException {
+        roundTrip();
+        itemCalls.incrementAndGet();
+        ExternalData data = createItem(path);
+        if (data == null) {
+            throw new PathNotFoundException(path);
+        }
+        return data;
+    }
+
+    @Override
+    public Set<String> getSupportedNodeTypes() {
+        return SUPPORTED_NODE_TYPES;
+    }
+
+    @Override
+    public boolean isSupportsHierarchicalIdentifiers() {
+        return false;
+    }
+
+    @Override
+    public boolean isSupportsUuid() {
+        return false;
+    }
+
+    @Override
+    public boolean itemExists(String path) {
+        roundTrip();
+        return createItem(path) != null;
+    }
+
+    /**
+     * Builds the item at the specified path without any latency, or returns null if there is no such item.
+     */
+    protected ExternalData createItem(String path) {
+        if ("/".equals(path)) {
+            return new ExternalData("stub:/", path, DATA_TYPE_CATALOG, Collections.<String, String[]>emptyMap());
+        }
+        if (isDirectory(path)) {
+            return new ExternalData("stub:" + path, path, DATA_TYPE_DIRECTORY, Collections.<String, String[]>emptyMap());
+        }
+        String parent = StringUtils.substringBeforeLast(path, "/");
+        String name = StringUtils.substringAfterLast(path, "/");
+        if (isDirectory(parent) && name.startsWith("item-")
+                && isIndex(name.substring(5), itemsPerDirectory)) {
+            Map<String, String[]> properties = new HashMap<String, String[]>();
+            properties.put("country_iso_code", new String[] { name.substring(5) });
+            properties.put("region", new String[] { parent.substring(1) });
+            return new ExternalData("stub:" + path, path, DATA_TYPE_ITEM, properties);
+        }
+        return null;
+    }
+
+    /**
+     * Simulates the latency of a call to the back-end and counts it.
+     */
+    protected void roundTrip() {
+        calls.incrementAndGet();
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isDirectory(String path) {
+        return path.startsWith("/dir-") && isIndex(path.substring(5), directories);
+    }
+
+    private static boolean isIndex(String value, int max) {
+        if (value.isEmpty() || !StringUtils.isNumeric(value)) {
+            return false;
+        }
+        int index = Integer.parseInt(value);
+        return index < max && String.valueOf(index).equals(value);
+    }
+
+    /**
+     * Returns the number of calls made to this data source since the last reset.
+     */
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the number of single item retrievals (by path or identifier) since the last reset.
+     */
+    public int getItemCalls() {
+        return itemCalls.get();
+    }
+
+    public void resetCalls() {
+        calls.set(0);
+        itemCalls.set(0);
+    }
+
+    public int getDirectories() {
+        return directories;
+    }
+
+    public int getItemsPerDirectory() {
+        return itemsPerDirectory;
+    }
+
+    public void setDirectories(int directories) {
+        this.directories = directories;
+    }
+
+    public void setItemsPerDirectory(int itemsPerDirectory) {
+        this.itemsPerDirectory = itemsPerDirectory;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+}
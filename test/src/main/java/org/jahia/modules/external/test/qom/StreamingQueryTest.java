@@ -0,0 +1,195 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.qom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
+
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalContentStoreProvider;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.test.JahiaTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Integration tests for the queries on a data source returning its results through a cursor: offset and limit
+ * window, merge with the results found in the extension, and release of the cursors.
+ */
+public class StreamingQueryTest extends JahiaTestCase {
+
+    private final static String STREAMING_PROVIDER_MOUNTPOINT = "/external-stub-streaming";
+
+    private JCRSessionWrapper session;
+
+    private StreamingStubDataSource dataSource;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = JCRSessionFactory.getInstance().getCurrentUserSession(Constants.EDIT_WORKSPACE, Locale.ENGLISH);
+        assertTrue("Cannot find mounted provider at " + STREAMING_PROVIDER_MOUNTPOINT,
+                session.nodeExists(STREAMING_PROVIDER_MOUNTPOINT));
+        dataSource = (StreamingStubDataSource) ((ExternalContentStoreProvider) JCRSessionFactory.getInstance()
+                .getProviders().get("ExternalStreamingStubProvider")).getDataSource();
+        cleanExtension();
+        dataSource.resetCalls();
+    }
+
+    @After
+    public void tearDown() throws RepositoryException {
+        cleanExtension();
+        session.logout();
+    }
+
+    @Test
+    public void testOffsetAndLimit() throws RepositoryException {
+        List<String> paths = getPaths(query("dir-1", 5, 10));
+        List<String> expected = new ArrayList<String>();
+        for (int i = 5; i < 15; i++) {
+            expected.add(STREAMING_PROVIDER_MOUNTPOINT + "/dir-1/item-" + i);
+        }
+        assertEquals(expected, paths);
+        assertCursorsClosed();
+    }
+
+    @Test
+    public void testCursorClosedWhenFullyRead() throws RepositoryException {
+        assertEquals(dataSource.getItemsPerDirectory(), getPaths(query("dir-0", 0, -1)).size());
+        assertCursorsClosed();
+    }
+
+    @Test
+    public void testCursorClosedWhenIteratedAgain() throws RepositoryException {
+        QueryResult result = query("dir-0", 0, -1);
+        // only the first page of rows is read, the cursor is still open
+        assertTrue(result.getRows().hasNext());
+        assertEquals(dataSource.getItemsPerDirectory(), getPaths(result).size());
+        assertEquals(2, dataSource.getOpenedCursors());
+        assertCursorsClosed();
+    }
+
+    @Test
+    public void testMergeWithExtension() throws RepositoryException {
+        // one item of the directory overridden with the same value, one of another directory moved to this one
+        session.getNode(STREAMING_PROVIDER_MOUNTPOINT + "/dir-0/item-2").setProperty("region", "dir-0");
+        session.getNode(STREAMING_PROVIDER_MOUNTPOINT + "/dir-1/item-5").setProperty("region", "dir-0");
+        session.save();
+
+        List<String> all = getPaths(query("dir-0", 0, -1));
+        assertEquals("Extension results should be merged without duplicates", dataSource.getItemsPerDirectory() + 1,
+                all.size());
+        assertEquals(all.size(), new HashSet<String>(all).size());
+        assertTrue(all.contains(STREAMING_PROVIDER_MOUNTPOINT + "/dir-1/item-5"));
+        for (int i = 0; i < dataSource.getItemsPerDirectory(); i++) {
+            assertTrue(all.contains(STREAMING_PROVIDER_MOUNTPOINT + "/dir-0/item-" + i));
+        }
+        // extension results come first
+        List<String> extended = new ArrayList<String>(all.subList(0, 2));
+        Collections.sort(extended);
+        assertEquals(STREAMING_PROVIDER_MOUNTPOINT + "/dir-0/item-2", extended.get(0));
+        assertEquals(STREAMING_PROVIDER_MOUNTPOINT + "/dir-1/item-5", extended.get(1));
+
+        // windows within the extension results, across both and within the data source results
+        assertEquals(all.subList(0, 1), getPaths(query("dir-0", 0, 1)));
+        assertEquals(all.subList(1, 6), getPaths(query("dir-0", 1, 5)));
+        assertEquals(all.subList(10, 20), getPaths(query("dir-0", 10, 10)));
+        assertEquals(all.subList(all.size() - 3, all.size()), getPaths(query("dir-0", all.size() - 3, 10)));
+        assertCursorsClosed();
+    }
+
+    private QueryResult query(String region, long offset, long limit) throws RepositoryException {
+        Query query = session.getWorkspace().getQueryManager().createQuery("select * from [jtestnt:country] as c"
+                + " where c.region = '" + region + "' and isdescendantnode(c, '" + STREAMING_PROVIDER_MOUNTPOINT + "')",
+                Query.JCR_SQL2);
+        if (offset > 0) {
+            query.setOffset(offset);
+        }
+        if (limit > -1) {
+            query.setLimit(limit);
+        }
+        return query.execute();
+    }
+
+    private static List<String> getPaths(QueryResult result) throws RepositoryException {
+        List<String> paths = new ArrayList<String>();
+        NodeIterator it = result.getNodes();
+        while (it.hasNext()) {
+            paths.add(it.nextNode().getPath());
+        }
+        return paths;
+    }
+
+    private void assertCursorsClosed() {
+        assertTrue("No cursor opened", dataSource.getOpenedCursors() > 0);
+        assertEquals("Cursors should be closed once read", dataSource.getOpenedCursors(),
+                dataSource.getClosedCursors());
+    }
+
+    private void cleanExtension() throws RepositoryException {
+        Session jcrSession = session.getNode("/").getRealNode().getSession();
+        if (jcrSession.nodeExists(STREAMING_PROVIDER_MOUNTPOINT)) {
+            Node extension = jcrSession.getNode(STREAMING_PROVIDER_MOUNTPOINT);
+            NodeIterator it = extension.getNodes();
+            while (it.hasNext()) {
+                it.nextNode().remove();
+            }
+            jcrSession.save();
+        }
+    }
+}
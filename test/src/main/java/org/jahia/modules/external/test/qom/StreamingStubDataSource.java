@@ -0,0 +1,211 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.qom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.qom.Selector;
+
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.ExternalDataSource;
+import org.jahia.modules.external.ExternalQuery;
+import org.jahia.modules.external.ExternalQueryCursor;
+import org.jahia.modules.external.query.QueryHelper;
+import org.jahia.modules.external.test.prefetch.BatchStubDataSource;
+
+/**
+ * Stub data source returning its search results through a lazy cursor, which generates the matching items one by one
+ * and counts the cursors opened and closed. Only equality constraints on the item properties are supported. Items are
+ * also loaded in batch, so that the prefetch of the query result pages can be checked.
+ */
+public class StreamingStubDataSource extends BatchStubDataSource implements ExternalDataSource.StreamingSearchable {
+
+    private final AtomicInteger openedCursors = new AtomicInteger();
+
+    private final AtomicInteger closedCursors = new AtomicInteger();
+
+    @Override
+    public List<String> search(ExternalQuery query) throws RepositoryException {
+        List<String> paths = new ArrayList<String>();
+        ExternalQueryCursor cursor = searchCursor(query);
+        try {
+            while (cursor.hasNext()) {
+                paths.add(cursor.next());
+            }
+        } finally {
+            cursor.close();
+        }
+        return paths;
+    }
+
+    @Override
+    public ExternalQueryCursor searchCursor(ExternalQuery query) throws RepositoryException {
+        Map<String, Value> constraints = QueryHelper.getSimpleAndConstraints(query.getConstraint());
+        String nodeType = ((Selector) query.getSource()).getNodeTypeName();
+        roundTrip();
+        openedCursors.incrementAndGet();
+        return new StubCursor(DATA_TYPE_ITEM.equals(nodeType) ? constraints : null, query.getOffset(),
+                query.getLimit());
+    }
+
+    public int getOpenedCursors() {
+        return openedCursors.get();
+    }
+
+    public int getClosedCursors() {
+        return closedCursors.get();
+    }
+
+    @Override
+    public void resetCalls() {
+        super.resetCalls();
+        openedCursors.set(0);
+        closedCursors.set(0);
+    }
+
+    /**
+     * Cursor over the items matching the constraints, in directory then item order.
+     */
+    private class StubCursor implements ExternalQueryCursor {
+
+        private final Map<String, Value> constraints;
+        private final long limit;
+        private long toSkip;
+        private long count;
+        private int directory;
+        private int item;
+        private String next;
+        private boolean closed;
+
+        /**
+         * @param constraints the property values to match, or null if no item can match
+         */
+        StubCursor(Map<String, Value> constraints, long offset, long limit) {
+            this.constraints = constraints;
+            this.toSkip = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public long getSize() {
+            return -1;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                closedCursors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = fetch();
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            count++;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private String fetch() {
+            if (closed) {
+                throw new IllegalStateException("Cursor already closed");
+            }
+            if (constraints == null || (limit > -1 && count >= limit)) {
+                return null;
+            }
+            while (directory < getDirectories()) {
+                String path = "/dir-" + directory + "/item-" + item;
+                if (++item >= getItemsPerDirectory()) {
+                    item = 0;
+                    directory++;
+                }
+                if (matches(createItem(path))) {
+                    if (toSkip > 0) {
+                        toSkip--;
+                        continue;
+                    }
+                    return path;
+                }
+            }
+            return null;
+        }
+
+        private boolean matches(ExternalData data) {
+            try {
+                for (Map.Entry<String, Value> entry : constraints.entrySet()) {
+                    String[] values = data.getProperties().get(entry.getKey());
+                    if (values == null || !values[0].equals(entry.getValue().getString())) {
+                        return false;
+                    }
+                }
+            } catch (RepositoryException e) {
+                throw new IllegalStateException(e);
+            }
+            return true;
+        }
+    }
+}
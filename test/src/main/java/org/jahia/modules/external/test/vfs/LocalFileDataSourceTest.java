@@ -0,0 +1,246 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.test.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.vfs2.provider.UriParser;
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.modules.external.vfs.LocalFileBinaryImpl;
+import org.jahia.modules.external.vfs.LocalFileDataSource;
+import org.jahia.modules.external.vfs.VFSDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the java.nio based {@link LocalFileDataSource} exposes the same paths, names and content as the Commons
+ * VFS based {@link VFSDataSource} for the same local directory, the positional reads of both binaries and the channel
+ * transfers of the local one.
+ */
+public class LocalFileDataSourceTest {
+
+    // names with characters escaped by UriParser.encode, spaces and non ASCII characters
+    private static final String[] NAMES = { "100% done.txt", "already%20encoded.txt", "space name.txt",
+            "unicod\u00e9 \u00fcml\u00e4ut.txt", "folder 50%" };
+
+    private static final String BINARY_NAME = "data.bin";
+
+    private static final int BINARY_SIZE = 10000;
+
+    private static File rootDir;
+
+    private static VFSDataSource vfsDataSource;
+
+    private static LocalFileDataSource localDataSource;
+
+    @BeforeClass
+    public static void oneTimeSetUp() throws IOException {
+        rootDir = new File(FileUtils.getTempDirectory(), "localFileDataSourceTest-" + System.currentTimeMillis());
+        for (String name : NAMES) {
+            if (name.startsWith("folder")) {
+                File folder = new File(rootDir, name);
+                FileUtils.writeStringToFile(new File(folder, "child 10%.txt"), "child", "UTF-8");
+            } else {
+                FileUtils.writeStringToFile(new File(rootDir, name), name, "UTF-8");
+            }
+        }
+        byte[] data = new byte[BINARY_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        FileUtils.writeByteArrayToFile(new File(rootDir, BINARY_NAME), data);
+
+        String rootUri = "file://" + rootDir.getAbsolutePath();
+        vfsDataSource = new VFSDataSource();
+        vfsDataSource.setRoot(rootUri);
+        localDataSource = new LocalFileDataSource();
+        localDataSource.setRoot(rootUri);
+    }
+
+    @AfterClass
+    public static void oneTimeTearDown() throws IOException {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Test
+    public void testSameChildren() throws RepositoryException {
+        List<String> expected = sorted(vfsDataSource.getChildren("/"));
+        assertEquals(NAMES.length + 1, expected.size());
+        assertTrue("Names should be encoded by VFS", expected.contains(UriParser.encode("100% done.txt")));
+        assertEquals(expected, sorted(localDataSource.getChildren("/")));
+
+        String folderPath = "/" + UriParser.encode("folder 50%");
+        assertEquals(sorted(vfsDataSource.getChildren(folderPath)), sorted(localDataSource.getChildren(folderPath)));
+    }
+
+    @Test
+    public void testSameChildrenNodes() throws RepositoryException {
+        assertEquals(describe(vfsDataSource.getChildrenNodes("/")), describe(localDataSource.getChildrenNodes("/")));
+
+        String folderPath = "/" + UriParser.encode("folder 50%");
+        assertEquals(describe(vfsDataSource.getChildrenNodes(folderPath)),
+                describe(localDataSource.getChildrenNodes(folderPath)));
+    }
+
+    @Test
+    public void testSameFilteredChildren() throws RepositoryException {
+        final Set<String> foldersOnly = Collections.singleton(Constants.JAHIANT_FOLDER);
+        VFSDataSource vfsFolders = new VFSDataSource() {
+            @Override
+            public Set<String> getSupportedNodeTypes() {
+                return foldersOnly;
+            }
+        };
+        LocalFileDataSource localFolders = new LocalFileDataSource() {
+            @Override
+            public Set<String> getSupportedNodeTypes() {
+                return foldersOnly;
+            }
+        };
+        String rootUri = "file://" + rootDir.getAbsolutePath();
+        vfsFolders.setRoot(rootUri);
+        localFolders.setRoot(rootUri);
+
+        List<String> expected = vfsFolders.getChildren("/");
+        assertEquals(Collections.singletonList(UriParser.encode("folder 50%")), expected);
+        assertEquals(expected, localFolders.getChildren("/"));
+        assertEquals(describe(vfsFolders.getChildrenNodes("/")), describe(localFolders.getChildrenNodes("/")));
+    }
+
+    @Test
+    public void testSameItems() throws RepositoryException {
+        for (ExternalData child : vfsDataSource.getChildrenNodes("/")) {
+            ExternalData local = localDataSource.getItemByPath(child.getPath());
+            assertEquals(child.getPath(), local.getPath());
+            assertEquals(child.getId(), local.getId());
+            assertEquals(child.getName(), local.getName());
+            assertEquals(child.getType(), local.getType());
+            assertEquals(child.getId(), localDataSource.getItemByIdentifier(child.getId()).getId());
+        }
+    }
+
+    @Test
+    public void testVFSBinaryPositionalRead() throws Exception {
+        checkPositionalRead(vfsDataSource.getItemByPath("/" + BINARY_NAME + "/" + Constants.JCR_CONTENT));
+    }
+
+    @Test
+    public void testLocalBinaryPositionalRead() throws Exception {
+        checkPositionalRead(localDataSource.getItemByPath("/" + BINARY_NAME + "/" + Constants.JCR_CONTENT));
+    }
+
+    @Test
+    public void testLocalBinaryTransfer() throws Exception {
+        ExternalData content = localDataSource.getItemByPath("/" + BINARY_NAME + "/" + Constants.JCR_CONTENT);
+        Binary binary = content.getBinaryProperties().get(Constants.JCR_DATA)[0];
+        assertTrue(binary instanceof LocalFileBinaryImpl);
+        byte[] expected = FileUtils.readFileToByteArray(new File(rootDir, BINARY_NAME));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(BINARY_SIZE, ((LocalFileBinaryImpl) binary).transferTo(out));
+        assertArrayEquals(expected, out.toByteArray());
+
+        // file targets get the channel to channel transfer
+        File copy = new File(rootDir, "copy.tmp");
+        FileOutputStream fileOut = new FileOutputStream(copy);
+        try {
+            assertEquals(BINARY_SIZE, ((LocalFileBinaryImpl) binary).transferTo(fileOut));
+        } finally {
+            fileOut.close();
+            binary.dispose();
+        }
+        try {
+            assertArrayEquals(expected, FileUtils.readFileToByteArray(copy));
+        } finally {
+            FileUtils.deleteQuietly(copy);
+        }
+    }
+
+    private void checkPositionalRead(ExternalData content) throws Exception {
+        Binary binary = content.getBinaryProperties().get(Constants.JCR_DATA)[0];
+        try {
+            assertEquals(BINARY_SIZE, binary.getSize());
+
+            byte[] b = new byte[100];
+            assertEquals(100, binary.read(b, 5000));
+            for (int i = 0; i < b.length; i++) {
+                assertEquals("Wrong byte at " + (5000 + i), (byte) ((5000 + i) % 251), b[i]);
+            }
+
+            assertEquals("Read at the end of the file should be partial", 50, binary.read(b, BINARY_SIZE - 50));
+            assertEquals((byte) ((BINARY_SIZE - 1) % 251), b[49]);
+
+            assertEquals(-1, binary.read(b, BINARY_SIZE));
+            assertEquals(0, binary.read(new byte[0], 0));
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> result = new ArrayList<String>(values);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static List<String> describe(List<ExternalData> items) {
+        List<String> result = new ArrayList<String>();
+        for (ExternalData item : items) {
+            result.add(item.getPath() + "|" + item.getId() + "|" + item.getName() + "|" + item.getType());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -57,10 +57,14 @@ import org.jahia.test.services.content.ContentTest;
 import org.junit.*;
 import org.slf4j.Logger;
 
+import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 import static org.junit.Assert.*;
@@ -298,6 +302,36 @@ public class VFSAclTest {
         assertFalse((JCRTemplate.getInstance().doExecute("user1", null ,null, null, new CheckPermission(content12.getPath(), "jcr:read"))));
     }
 
+    @Test
+    public void testListingAfterReadRevoked() throws Exception {
+        content1.grantRoles("u:user1", Collections.singleton("owner"));
+        session.save();
+
+        final String path = content1.getPath();
+        assertTrue((JCRTemplate.getInstance().doExecute("user1", null, null, null, new JCRCallback<Boolean>() {
+            public Boolean doInJCR(JCRSessionWrapper userSession) throws RepositoryException {
+                assertEquals(Arrays.asList("content1.1", "content1.2"), getChildNames(userSession, path));
+
+                // revoked from another session while the permissions of the user session are cached
+                content12.denyRoles("u:user1", Collections.singleton("owner"));
+                session.save();
+
+                assertEquals(Collections.singletonList("content1.1"), getChildNames(userSession, path));
+                return true;
+            }
+        })));
+    }
+
+    private static List<String> getChildNames(JCRSessionWrapper session, String path) throws RepositoryException {
+        List<String> names = new ArrayList<String>();
+        NodeIterator it = session.getNode(path).getNodes();
+        while (it.hasNext()) {
+            names.add(it.nextNode().getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
 
 
     class CheckPermission implements JCRCallback<Boolean> {
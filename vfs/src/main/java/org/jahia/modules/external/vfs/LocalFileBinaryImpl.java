@@ -0,0 +1,287 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.vfs;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+
+/**
+ * JCR {@link Binary} implementation which reads a local file through a {@link FileChannel}: positional reads do not
+ * re-read the file from the start, and the binary and its streams can be copied with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. No file handle is kept by the binary itself, each
+ * positional read or transfer opens and closes its own channel and each stream owns its channel until it is closed.
+ */
+public class LocalFileBinaryImpl implements Binary {
+
+    private final Path file;
+
+    private final long size;
+
+    /**
+     * Initializes an instance of this class.
+     *
+     * @param file
+     *            the local file
+     * @param size
+     *            the size of the file when it was read
+     */
+    public LocalFileBinaryImpl(Path file, long size) {
+        super();
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * Returns the underlying file.
+     *
+     * @return the underlying file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void dispose() {
+        // no resource is held between calls
+    }
+
+    @Override
+    public long getSize() throws RepositoryException {
+        return size;
+    }
+
+    @Override
+    public InputStream getStream() throws RepositoryException {
+        try {
+            return new FileChannelInputStream(FileChannel.open(file, StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, long position) throws IOException, RepositoryException {
+        if (position < 0) {
+            throw new IllegalArgumentException("position must not be negative");
+        }
+        if (b.length == 0) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (position >= channel.size()) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b);
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            return read > 0 ? read : -1;
+        }
+    }
+
+    /**
+     * Writes the whole file to the specified channel, without copying it through the Java heap when the target is a
+     * file or a socket channel.
+     *
+     * @param target
+     *            the channel to write to
+     * @return the number of bytes written
+     * @throws IOException
+     *             in case of an I/O error
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return transfer(channel, 0, target);
+        }
+    }
+
+    /**
+     * Writes the whole file to the specified stream.
+     *
+     * @param out
+     *            the stream to write to
+     * @return the number of bytes written
+     * @throws IOException
+     *             in case of an I/O error
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        return transferTo(toChannel(out));
+    }
+
+    private static WritableByteChannel toChannel(OutputStream out) {
+        // the channel of a file stream gets the zero-copy transfer, other streams get a buffered copy
+        return out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+    }
+
+    private static long transfer(FileChannel source, long position, WritableByteChannel target) throws IOException {
+        long count = source.size() - position;
+        long transferred = 0;
+        while (transferred < count) {
+            long n = source.transferTo(position + transferred, count - transferred, target);
+            if (n <= 0) {
+                break;
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj != null && this.getClass() == obj.getClass()) {
+            return this.file.equals(((LocalFileBinaryImpl) obj).file);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return file.hashCode();
+    }
+
+    /**
+     * Input stream reading a file channel, supporting mark and reset.
+     */
+    private static class FileChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long mark;
+
+        FileChannelInputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            long position = channel.position();
+            long skipped = Math.min(n, Math.max(0, channel.size() - position));
+            channel.position(position + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - channel.position()));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            try {
+                mark = channel.position();
+            } catch (IOException e) {
+                mark = 0;
+            }
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            channel.position(mark);
+        }
+
+        /**
+         * Writes the remaining bytes of the stream to the specified output stream using
+         * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. Also used by the copies done with
+         * <code>InputStream.transferTo</code> on Java 9 and later.
+         *
+         * @param out
+         *            the stream to write to
+         * @return the number of bytes written
+         * @throws IOException
+         *             in case of an I/O error
+         */
+        public long transferTo(OutputStream out) throws IOException {
+            long position = channel.position();
+            long transferred = transfer(channel, position, toChannel(out));
+            channel.position(position + transferred);
+            return transferred;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
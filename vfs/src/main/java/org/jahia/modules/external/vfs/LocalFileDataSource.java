@@ -0,0 +1,403 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2016 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.external.vfs;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.provider.UriParser;
+import org.apache.commons.vfs2.provider.local.LocalFileName;
+import org.apache.jackrabbit.util.ISO8601;
+import org.jahia.api.Constants;
+import org.jahia.modules.external.ExternalData;
+import org.jahia.services.content.JCRContentUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Binary;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Data source for VFS mounts pointing to the local file system (<code>file://</code> URIs). Reads go straight to
+ * java.nio instead of Commons VFS: directories are listed with a {@link DirectoryStream} and a single
+ * {@link BasicFileAttributes} read per entry, MIME types are detected once per file extension and binaries are served
+ * through a {@link java.nio.channels.FileChannel} (see {@link LocalFileBinaryImpl}). Writes still go through Commons
+ * VFS. Paths and identifiers are the same as the ones of the {@link VFSDataSource}.
+ */
+public class LocalFileDataSource extends VFSDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalFileDataSource.class);
+
+    private static final String JCR_CONTENT_SUFFIX = "/" + Constants.JCR_CONTENT;
+
+    private static final List<String> JCR_CONTENT_LIST = Collections.singletonList(Constants.JCR_CONTENT);
+
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private final ConcurrentMap<String, String> mimeTypesByExtension = new ConcurrentHashMap<String, String>();
+
+    private Path rootDirectory;
+
+    /**
+     * Returns <code>true</code> if the specified root URI points to the local file system and can be served by this
+     * data source.
+     *
+     * @param rootUri the root URI of the mount point
+     * @return <code>true</code> if the URI is a <code>file://</code> one
+     */
+    public static boolean isLocal(String rootUri) {
+        return rootUri != null && StringUtils.startsWithIgnoreCase(rootUri.trim(), "file:");
+    }
+
+    @Override
+    public void setRoot(String rootUri) {
+        super.setRoot(rootUri);
+        try {
+            FileName name = getRoot().getName();
+            if (name instanceof LocalFileName) {
+                // same resolution as the VFS local file itself
+                rootDirectory = Paths.get(((LocalFileName) name).getRootFile() + name.getPathDecoded());
+            } else {
+                rootDirectory = Paths.get(URI.create(name.getURI()));
+            }
+            rootDirectory = rootDirectory.toAbsolutePath().normalize();
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot resolve local root directory for " + rootUri, e);
+        }
+    }
+
+    protected Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    @Override
+    public boolean itemExists(String path) {
+        try {
+            return Files.exists(toLocalPath(path.endsWith(JCR_CONTENT_SUFFIX) ? StringUtils.substringBeforeLast(path,
+                    JCR_CONTENT_SUFFIX) : path));
+        } catch (PathNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public ExternalData getItemByIdentifier(String identifier) throws ItemNotFoundException {
+        if (identifier.startsWith("/")) {
+            try {
+                return getItemByPath(identifier);
+            } catch (PathNotFoundException e) {
+                throw new ItemNotFoundException(identifier, e);
+            }
+        }
+        throw new ItemNotFoundException(identifier);
+    }
+
+    @Override
+    public ExternalData getItemByPath(String path) throws PathNotFoundException {
+        boolean content = path.endsWith(JCR_CONTENT_SUFFIX);
+        String filePath = content ? StringUtils.substringBeforeLast(path, JCR_CONTENT_SUFFIX) : normalize(path);
+        Path file = toLocalPath(filePath);
+        BasicFileAttributes attributes;
+        try {
+            attributes = readAttributes(file);
+        } catch (IOException e) {
+            throw new PathNotFoundException(path, e);
+        }
+        if (content) {
+            if (attributes.isDirectory()) {
+                throw new PathNotFoundException(path);
+            }
+            return getFileContent(filePath, file, attributes);
+        }
+        return getFile(filePath, file, attributes);
+    }
+
+    @Override
+    public List<String> getChildren(String path) throws RepositoryException {
+        if (path.endsWith(JCR_CONTENT_SUFFIX)) {
+            return Collections.emptyList();
+        }
+        Path directory = toLocalPath(path);
+        try {
+            BasicFileAttributes attributes = readAttributes(directory);
+            if (!attributes.isDirectory()) {
+                return JCR_CONTENT_LIST;
+            }
+            List<String> children = new ArrayList<String>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    BasicFileAttributes childAttributes;
+                    try {
+                        childAttributes = readAttributes(child);
+                    } catch (IOException e) {
+                        logger.debug("Cannot read attributes of {}, skipping it", child, e);
+                        continue;
+                    }
+                    if (getSupportedNodeTypes().contains(getDataType(childAttributes))) {
+                        children.add(encode(child.getFileName().toString()));
+                    }
+                }
+            }
+            return children;
+        } catch (NoSuchFileException e) {
+            throw new PathNotFoundException(path, e);
+        } catch (IOException e) {
+            logger.error("Cannot get node children", e);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ExternalData> getChildrenNodes(String path) throws RepositoryException {
+        if (path.endsWith(JCR_CONTENT_SUFFIX)) {
+            return Collections.emptyList();
+        }
+        String parentPath = normalize(path);
+        Path directory = toLocalPath(parentPath);
+        try {
+            BasicFileAttributes attributes = readAttributes(directory);
+            if (!attributes.isDirectory()) {
+                return Collections.singletonList(getFileContent(parentPath, directory, attributes));
+            }
+            List<ExternalData> children = new ArrayList<ExternalData>();
+            String prefix = parentPath.equals("/") ? "/" : parentPath + "/";
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    BasicFileAttributes childAttributes;
+                    try {
+                        // file systems which return the attributes with the directory entries (e.g. Windows) do not
+                        // need another call here
+                        childAttributes = readAttributes(child);
+                    } catch (IOException e) {
+                        logger.debug("Cannot read attributes of {}, skipping it", child, e);
+                        continue;
+                    }
+                    if (!getSupportedNodeTypes().contains(getDataType(childAttributes))) {
+                        continue;
+                    }
+                    String childPath = prefix + encode(child.getFileName().toString());
+                    children.add(getFile(childPath, child, childAttributes));
+                    if (!childAttributes.isDirectory()) {
+                        children.add(getFileContent(childPath, child, childAttributes));
+                    }
+                }
+            }
+            return children;
+        } catch (NoSuchFileException e) {
+            throw new PathNotFoundException(path, e);
+        } catch (IOException e) {
+            logger.error("Cannot get node children", e);
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void removeItemByPath(String path) throws RepositoryException {
+        super.removeItemByPath(path);
+        refresh(path);
+    }
+
+    @Override
+    public void saveItem(ExternalData data) throws RepositoryException {
+        super.saveItem(data);
+        refresh(data.getPath().contains(JCR_CONTENT_SUFFIX) ? StringUtils.substringBefore(data.getPath(),
+                JCR_CONTENT_SUFFIX) : data.getPath());
+    }
+
+    @Override
+    public void move(String oldPath, String newPath) throws RepositoryException {
+        super.move(oldPath, newPath);
+        refresh(oldPath);
+        refresh(newPath);
+    }
+
+    /**
+     * Writes go through Commons VFS, which caches file states: make sure the next VFS write sees the current state.
+     */
+    private void refresh(String path) {
+        try {
+            getFile(path).refresh();
+            getFile(StringUtils.defaultIfEmpty(StringUtils.substringBeforeLast(path, "/"), "/")).refresh();
+        } catch (FileSystemException e) {
+            logger.debug("Unable to refresh VFS state of {}", path, e);
+        }
+    }
+
+    private ExternalData getFile(String path, Path file, BasicFileAttributes attributes) {
+        String type = getDataType(attributes);
+
+        Map<String, String[]> properties = new HashMap<String, String[]>();
+        List<String> addedMixins = new ArrayList<>();
+        long lastModifiedTime = attributes.lastModifiedTime().toMillis();
+        if (lastModifiedTime > 0) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(lastModifiedTime);
+            String[] timestamp = new String[]{ISO8601.format(calendar)};
+            properties.put(Constants.JCR_CREATED, timestamp);
+            properties.put(Constants.JCR_LASTMODIFIED, timestamp);
+        }
+        // Add jmix:image mixin in case of the file is a picture.
+        if (!attributes.isDirectory() && getMimeType(file.getFileName().toString()).startsWith("image/")) {
+            addedMixins.add(Constants.JAHIAMIX_IMAGE);
+        }
+
+        ExternalData result = new ExternalData(path, path, type, properties);
+        result.setMixin(addedMixins);
+        return result;
+    }
+
+    /**
+     * Local counterpart of {@link #getDataType(org.apache.commons.vfs2.FileObject)}: only directories are folders,
+     * any other entry (including special files and broken links) is exposed as a file.
+     */
+    protected String getDataType(BasicFileAttributes attributes) {
+        return attributes.isDirectory() ? Constants.JAHIANT_FOLDER : Constants.JAHIANT_FILE;
+    }
+
+    /**
+     * Reads the attributes of the link target, or of the link itself when it is broken.
+     */
+    private static BasicFileAttributes readAttributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            try {
+                return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException linkException) {
+                throw e;
+            }
+        }
+    }
+
+    private ExternalData getFileContent(String path, Path file, BasicFileAttributes attributes) {
+        Map<String, String[]> properties = new HashMap<String, String[]>(1);
+        properties.put(Constants.JCR_MIMETYPE, new String[]{getMimeType(file.getFileName().toString())});
+
+        String jcrContentPath = path + JCR_CONTENT_SUFFIX;
+        ExternalData externalData = new ExternalData(jcrContentPath, jcrContentPath, Constants.JAHIANT_RESOURCE, properties);
+
+        Map<String, Binary[]> binaryProperties = new HashMap<String, Binary[]>(1);
+        binaryProperties.put(Constants.JCR_DATA, new Binary[]{new LocalFileBinaryImpl(file, attributes.size())});
+        externalData.setBinaryProperties(binaryProperties);
+
+        return externalData;
+    }
+
+    /**
+     * Detects the MIME type of a file the same way as the VFS content info, then the Jahia MIME types, caching the
+     * result by extension.
+     */
+    protected String getMimeType(String fileName) {
+        String extension = StringUtils.substringAfterLast(fileName, ".");
+        if (extension.isEmpty()) {
+            return detectMimeType(fileName);
+        }
+        String mimeType = mimeTypesByExtension.get(extension);
+        if (mimeType == null) {
+            mimeType = detectMimeType(fileName);
+            mimeTypesByExtension.putIfAbsent(extension, mimeType);
+        }
+        return mimeType;
+    }
+
+    private static String detectMimeType(String fileName) {
+        String mimeType = URLConnection.getFileNameMap().getContentTypeFor(fileName);
+        if (mimeType == null) {
+            mimeType = JCRContentUtils.getMimeType(fileName);
+        }
+        return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
+    }
+
+    /**
+     * Resolves the local file of the specified JCR path, making sure it does not escape the root directory.
+     */
+    private Path toLocalPath(String path) throws PathNotFoundException {
+        String relativePath = StringUtils.strip(path, "/");
+        if (relativePath.isEmpty()) {
+            return rootDirectory;
+        }
+        Path file;
+        try {
+            file = rootDirectory.resolve(UriParser.decode(relativePath)).normalize();
+        } catch (Exception e) {
+            throw new PathNotFoundException(path, e);
+        }
+        if (!file.startsWith(rootDirectory)) {
+            throw new PathNotFoundException(path);
+        }
+        return file;
+    }
+
+    private static String normalize(String path) {
+        if (path == null || path.isEmpty() || path.equals("/")) {
+            return "/";
+        }
+        String normalized = path.charAt(0) == '/' ? path : "/" + path;
+        return normalized.length() > 1 && normalized.endsWith("/") ? normalized.substring(0, normalized.length() - 1)
+                : normalized;
+    }
+
+    /**
+     * Encodes a file name the same way Commons VFS does in the file paths, so that identifiers are the same in both
+     * modes.
+     */
+    private static String encode(String name) {
+        return UriParser.encode(name);
+    }
+}
@@ -50,8 +50,11 @@ import javax.jcr.Binary;
 import javax.jcr.RepositoryException;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.vfs2.Capability;
 import org.apache.commons.vfs2.FileContent;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.RandomAccessContent;
+import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -106,15 +109,38 @@ public class VFSBinaryImpl implements Binary {
 
     @Override
     public int read(byte[] b, long position) throws IOException, RepositoryException {
+        if (position < 0) {
+            throw new IllegalArgumentException("position must not be negative");
+        }
+        if (b.length == 0) {
+            return 0;
+        }
         InputStream is = null;
+        RandomAccessContent randomAccessContent = null;
         int read = 0;
         try {
-            is = getStream();
-            read = is.read(b, (int) position, b.length);
+            if (fileContent.getFile().getFileSystem().hasCapability(Capability.RANDOM_ACCESS_READ)) {
+                // seek directly to the requested position
+                randomAccessContent = fileContent.getRandomAccessContent(RandomAccessMode.READ);
+                if (position >= randomAccessContent.length()) {
+                    return -1;
+                }
+                randomAccessContent.seek(position);
+                is = randomAccessContent.getInputStream();
+            } else {
+                is = getStream();
+                if (IOUtils.skip(is, position) < position) {
+                    return -1;
+                }
+            }
+            read = IOUtils.read(is, b);
         } finally {
             IOUtils.closeQuietly(is);
+            if (randomAccessContent != null) {
+                randomAccessContent.close();
+            }
         }
-        return read;
+        return read > 0 ? read : -1;
     }
 
     @Override
@@ -274,6 +274,11 @@ public class VFSDataSource implements ExternalDataSource, ExternalDataSource.Wri
                     if (binaries.length > 0) {
                         outputStream = getFile(data.getPath().substring(0, data.getPath().indexOf(JCR_CONTENT_SUFFIX))).getContent().getOutputStream();
                         for (Binary binary : binaries) {
+                            if (binary instanceof LocalFileBinaryImpl) {
+                                // copied with a channel transfer rather than through a stream
+                                ((LocalFileBinaryImpl) binary).transferTo(outputStream);
+                                continue;
+                            }
                             InputStream stream = null;
                             try {
                                 stream = binary.getStream();
@@ -77,8 +77,15 @@ public class VFSProviderFactory implements ProviderFactory {
         provider.setKey(mountPoint.getIdentifier());
         provider.setMountPoint(mountPoint.getPath());
 
-        VFSDataSource dataSource = new VFSDataSource();
-        dataSource.setRoot(mountPoint.getProperty("j:rootPath").getString());
+        String root = mountPoint.getProperty("j:rootPath").getString();
+        VFSDataSource dataSource;
+        if (LocalFileDataSource.isLocal(root)) {
+            // local file system: use java.nio directly instead of Commons VFS for reads
+            dataSource = new LocalFileDataSource();
+        } else {
+            dataSource = new VFSDataSource();
+        }
+        dataSource.setRoot(root);
         provider.setDataSource(dataSource);
         provider.setDynamicallyMounted(true);
         provider.setSessionFactory(JCRSessionFactory.getInstance());